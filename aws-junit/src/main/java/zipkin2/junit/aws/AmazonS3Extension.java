@@ -0,0 +1,145 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.junit.aws;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A minimal S3 stand-in that supports path-style {@code PutObject} and {@code GetObject}, which is
+ * enough to test offloading payloads without a dependency on a real object store.
+ */
+public class AmazonS3Extension implements BeforeEachCallback, AfterEachCallback {
+  final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+  HttpServer server;
+
+  public AmazonS3Extension() {
+  }
+
+  @Override public void beforeEach(ExtensionContext extensionContext) throws IOException {
+    if (server == null) {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.createContext("/", this::handle);
+      server.start();
+    }
+    objects.clear();
+  }
+
+  @Override public void afterEach(ExtensionContext extensionContext) {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  public URI endpoint() {
+    return URI.create("http://localhost:%d".formatted(server.getAddress().getPort()));
+  }
+
+  /** Returns a client for this server, which needs path-style requests. */
+  public S3Client client() {
+    return S3Client.builder()
+        .httpClient(UrlConnectionHttpClient.create())
+        .credentialsProvider(
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("x", "x")))
+        .endpointOverride(endpoint())
+        .forcePathStyle(true)
+        .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+        .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+        .region(Region.US_EAST_1)
+        .build();
+  }
+
+  public int objectCount() {
+    return objects.size();
+  }
+
+  /** Returns the content of all stored objects. */
+  public Collection<byte[]> objects() {
+    return objects.values();
+  }
+
+  public void putObject(String bucket, String key, byte[] content) {
+    objects.put(bucket + "/" + key, content);
+  }
+
+  void handle(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath().substring(1); // bucket/key
+    try {
+      switch (exchange.getRequestMethod()) {
+        case "PUT" -> {
+          if (path.indexOf('/') != -1) objects.put(path, readBody(exchange));
+          exchange.getResponseHeaders().add("ETag", "\"" + path.hashCode() + "\"");
+          exchange.sendResponseHeaders(200, -1);
+        }
+        case "GET" -> {
+          byte[] object = objects.get(path);
+          if (object == null) {
+            byte[] error = ("<Error><Code>NoSuchKey</Code><Message>" + path
+                + "</Message></Error>").getBytes(UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(404, error.length);
+            exchange.getResponseBody().write(error);
+            return;
+          }
+          exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+          exchange.sendResponseHeaders(200, object.length);
+          exchange.getResponseBody().write(object);
+        }
+        default -> exchange.sendResponseHeaders(405, -1);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Reads the request body, removing {@code aws-chunked} framing when present. */
+  static byte[] readBody(HttpExchange exchange) throws IOException {
+    byte[] body = exchange.getRequestBody().readAllBytes();
+    String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+    String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+    boolean chunked = (contentSha256 != null && contentSha256.startsWith("STREAMING-"))
+        || (contentEncoding != null && contentEncoding.contains("aws-chunked"));
+    return chunked ? dechunk(body) : body;
+  }
+
+  static byte[] dechunk(byte[] body) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+    int i = 0;
+    while (i < body.length) {
+      int lineEnd = i;
+      while (lineEnd + 1 < body.length && !(body[lineEnd] == '\r' && body[lineEnd + 1] == '\n')) {
+        lineEnd++;
+      }
+      String header = new String(body, i, lineEnd - i, UTF_8);
+      int semicolon = header.indexOf(';');
+      int size = Integer.parseInt(semicolon != -1 ? header.substring(0, semicolon) : header, 16);
+      if (size == 0) break; // trailers follow
+      out.write(body, lineEnd + 2, size);
+      i = lineEnd + 2 + size + 2;
+    }
+    return out.toByteArray();
+  }
+}
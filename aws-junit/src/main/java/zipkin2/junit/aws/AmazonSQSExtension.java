@@ -4,11 +4,15 @@
  */
 package zipkin2.junit.aws;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 import org.elasticmq.StrictSQSLimits$;
 import org.elasticmq.rest.sqs.SQSRestServer;
 import org.elasticmq.rest.sqs.SQSRestServerBuilder;
@@ -140,9 +144,20 @@ public class AmazonSQSExtension implements BeforeEachCallback, AfterEachCallback
         .build());
   }
 
+  static byte[] gunzip(byte[] bytes) {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   static Stream<? extends Span> decodeSpans(Message m) {
     byte[] bytes =
         m.body().charAt(0) == '[' ? m.body().getBytes(UTF_8) : Base64.getDecoder().decode(m.body());
+    if (bytes.length > 1 && bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b) {
+      bytes = gunzip(bytes); // compressed by the sender
+    }
     if (bytes[0] == '[') {
       return SpanBytesDecoder.JSON_V2.decodeList(bytes).stream();
     }
@@ -0,0 +1,80 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.aws.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.collector.CollectorMetrics;
+import zipkin2.collector.CollectorSampler;
+import zipkin2.storage.StorageComponent;
+
+/**
+ * Samples spans and writes them to storage, calling back once each write completes. Collectors
+ * use this instead of {@link zipkin2.collector.Collector} when they must know a write completed
+ * before acknowledging its messages, such as deleting them from a queue or checkpointing a shard.
+ *
+ * <p>{@code Collector} can't be used for this, as it reports success once a write is handed to its
+ * executor, and it can't be extended, as its constructor isn't visible. This mirrors how it counts
+ * metrics: every span is counted, and spans sampled out or not stored are counted as dropped.
+ *
+ * <p>This is internal code shared by the SQS and Kinesis collectors, and may change at any time.
+ */
+public final class SpanWriter {
+  static final Logger logger = Logger.getLogger(SpanWriter.class.getName());
+
+  final StorageComponent storage;
+  final CollectorSampler sampler;
+  final CollectorMetrics metrics;
+
+  public SpanWriter(StorageComponent storage, CollectorSampler sampler, CollectorMetrics metrics) {
+    if (storage == null) throw new NullPointerException("storage == null");
+    if (sampler == null) throw new NullPointerException("sampler == null");
+    if (metrics == null) throw new NullPointerException("metrics == null");
+    this.storage = storage;
+    this.sampler = sampler;
+    this.metrics = metrics;
+  }
+
+  public CollectorSampler sampler() {
+    return sampler;
+  }
+
+  public CollectorMetrics metrics() {
+    return metrics;
+  }
+
+  /** Counts the spans, returning those the sampler keeps. Others are counted as dropped. */
+  public List<Span> sample(List<Span> spans) {
+    metrics.incrementSpans(spans.size());
+    List<Span> sampled = new ArrayList<>(spans.size());
+    for (Span span : spans) {
+      if (sampler.isSampled(span.traceId(), Boolean.TRUE.equals(span.debug()))) sampled.add(span);
+    }
+    int dropped = spans.size() - sampled.size();
+    if (dropped > 0) metrics.incrementSpansDropped(dropped);
+    return sampled;
+  }
+
+  /**
+   * Writes spans already {@linkplain #sample(List) sampled}, calling back once storage completes.
+   * On error, the caller decides whether to retry, or to call {@link #dropped}.
+   *
+   * @throws RuntimeException if storage fails before the write is enqueued. The callback isn't
+   *     called in this case.
+   */
+  public void write(List<Span> sampled, Callback<Void> callback) {
+    storage.spanConsumer().accept(sampled).enqueue(callback);
+  }
+
+  /** Counts spans that won't be stored as dropped, logging why. */
+  public void dropped(List<Span> spans, Throwable cause) {
+    metrics.incrementSpansDropped(spans.size());
+    logger.log(Level.WARNING, "Cannot store " + spans.size() + " spans", cause);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.aws.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.TestObjects;
+import zipkin2.collector.CollectorSampler;
+import zipkin2.collector.InMemoryCollectorMetrics;
+import zipkin2.storage.InMemoryStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpanWriterTest {
+  InMemoryStorage storage = InMemoryStorage.newBuilder().build();
+  InMemoryCollectorMetrics metrics = new InMemoryCollectorMetrics();
+  List<Span> spans = Arrays.asList(TestObjects.LOTS_OF_SPANS).subList(0, 20);
+
+  @Test void sample_countsSpansAndDropped() {
+    CollectorSampler sampler = CollectorSampler.create(0.5f);
+    SpanWriter writer = new SpanWriter(storage, sampler, metrics);
+
+    List<Span> sampled = writer.sample(spans);
+
+    assertThat(sampled).isNotEmpty().hasSizeLessThan(spans.size())
+        .allMatch(s -> sampler.isSampled(s.traceId(), false));
+    assertThat(metrics.spans()).isEqualTo(spans.size());
+    assertThat(metrics.spansDropped()).isEqualTo(spans.size() - sampled.size());
+  }
+
+  @Test void write_callsBackOnceStored() {
+    SpanWriter writer = new SpanWriter(storage, CollectorSampler.ALWAYS_SAMPLE, metrics);
+    AtomicBoolean stored = new AtomicBoolean();
+
+    writer.write(spans, new Callback<>() {
+      @Override public void onSuccess(Void value) {
+        stored.set(true);
+      }
+
+      @Override public void onError(Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+
+    assertThat(stored).isTrue();
+    assertThat(storage.acceptedSpanCount()).isEqualTo(spans.size());
+  }
+
+  @Test void dropped_counts() {
+    SpanWriter writer = new SpanWriter(storage, CollectorSampler.ALWAYS_SAMPLE, metrics);
+
+    writer.dropped(spans, new IllegalStateException("storage is down"));
+
+    assertThat(metrics.spansDropped()).isEqualTo(spans.size());
+  }
+}
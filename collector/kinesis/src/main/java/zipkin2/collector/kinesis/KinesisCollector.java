@@ -6,26 +6,61 @@ package zipkin2.collector.kinesis;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.awssdk.arns.Arn;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.StreamDescriptionSummary;
+import software.amazon.awssdk.services.kinesis.model.StreamStatus;
 import software.amazon.kinesis.common.ConfigsBuilder;
+import software.amazon.kinesis.common.InitialPositionInStream;
+import software.amazon.kinesis.common.InitialPositionInStreamExtended;
+import software.amazon.kinesis.common.StreamConfig;
+import software.amazon.kinesis.common.StreamIdentifier;
+import software.amazon.kinesis.coordinator.CoordinatorConfig;
 import software.amazon.kinesis.coordinator.Scheduler;
+import software.amazon.kinesis.coordinator.SchedulerCoordinatorFactory;
+import software.amazon.kinesis.leases.LeaseManagementConfig;
+import software.amazon.kinesis.metrics.MetricsConfig;
+import software.amazon.kinesis.metrics.NullMetricsFactory;
 import software.amazon.kinesis.processor.ShardRecordProcessor;
+import software.amazon.kinesis.processor.FormerStreamsLeasesDeletionStrategy;
+import software.amazon.kinesis.processor.MultiStreamTracker;
 import software.amazon.kinesis.processor.ShardRecordProcessorFactory;
+import software.amazon.kinesis.retrieval.RetrievalConfig;
+import software.amazon.kinesis.retrieval.polling.PollingConfig;
 import zipkin2.CheckResult;
-import zipkin2.collector.Collector;
 import zipkin2.collector.CollectorComponent;
 import zipkin2.collector.CollectorMetrics;
 import zipkin2.collector.CollectorSampler;
 import zipkin2.storage.StorageComponent;
 
 public final class KinesisCollector extends CollectorComponent {
+  static final Logger logger = Logger.getLogger(KinesisCollector.class.getName());
+  static final long STREAM_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+  static final long STREAM_CHECK_TIMEOUT_MILLIS = 5_000;
+  // Bounds records buffered while storage is slow, unless explicitly unlimited
+  static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+  // Decoding is CPU bound, so more threads than cores only add contention
+  static final int DEFAULT_PROCESSING_THREADS =
+      Math.max(2, Runtime.getRuntime().availableProcessors());
 
   public static Builder newBuilder() {
     return new Builder();
@@ -33,30 +68,46 @@ public final class KinesisCollector extends CollectorComponent {
 
   public static final class Builder extends CollectorComponent.Builder {
 
-    Collector.Builder delegate = Collector.newBuilder(KinesisCollector.class);
     CollectorMetrics metrics = CollectorMetrics.NOOP_METRICS;
 
     AwsCredentialsProvider credentialsProvider;
     String appName;
-    String streamName;
+    List<String> streamNames = List.of();
     String regionName = "us-east-1";
+    int maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    int maxBytesPerSecondPerShard;
+    boolean enhancedFanOut = true;
+    int maxRecords;
+    long idleTimeBetweenReadsMillis;
+    int processingThreads = DEFAULT_PROCESSING_THREADS;
+    int maxLeasesForWorker;
+    String workerId;
+    long failoverTimeMillis;
+    int maxLeasesToStealAtOneTime;
+    long gracefulShutdownTimeoutMillis = 20_000;
+    long checkpointIntervalMillis = 10_000;
+    boolean cloudWatchMetrics = true;
+    long maxMillisBehindLatest;
+    StorageComponent storage;
+    CollectorSampler sampler = CollectorSampler.ALWAYS_SAMPLE;
 
     @Override
     public Builder storage(StorageComponent storageComponent) {
-      delegate.storage(storageComponent);
+      this.storage = storageComponent;
       return this;
     }
 
     @Override
     public Builder metrics(CollectorMetrics metrics) {
       if (metrics == null) throw new NullPointerException("metrics == null");
-      delegate.metrics(this.metrics = metrics.forTransport("kinesis"));
+      this.metrics = metrics.forTransport("kinesis");
       return this;
     }
 
     @Override
     public Builder sampler(CollectorSampler collectorSampler) {
-      delegate.sampler(collectorSampler);
+      if (collectorSampler == null) throw new NullPointerException("sampler == null");
+      this.sampler = collectorSampler;
       return this;
     }
 
@@ -71,7 +122,20 @@ public final class KinesisCollector extends CollectorComponent {
     }
 
     public Builder streamName(String streamName) {
-      this.streamName = streamName;
+      if (streamName == null) throw new NullPointerException("streamName == null");
+      this.streamNames = List.of(streamName);
+      return this;
+    }
+
+    /**
+     * Consumes several streams with the same clients, worker threads and lease table, instead of
+     * running a collector per stream. Leases of all streams are balanced across collectors with
+     * the same {@link #appName(String) app name}.
+     */
+    public Builder streamNames(List<String> streamNames) {
+      if (streamNames == null) throw new NullPointerException("streamNames == null");
+      if (streamNames.isEmpty()) throw new IllegalArgumentException("streamNames is empty");
+      this.streamNames = List.copyOf(streamNames);
       return this;
     }
 
@@ -80,6 +144,184 @@ public final class KinesisCollector extends CollectorComponent {
       return this;
     }
 
+    /**
+     * Limits the rate of record bytes admitted from each shard. Records over the limit are dropped
+     * before decoding, so a runaway producer can't take processing time from other shards. Zero
+     * means no limit, which is the default.
+     */
+    public Builder maxBytesPerSecondPerShard(int maxBytesPerSecondPerShard) {
+      if (maxBytesPerSecondPerShard < 0) {
+        throw new IllegalArgumentException("maxBytesPerSecondPerShard must not be negative");
+      }
+      this.maxBytesPerSecondPerShard = maxBytesPerSecondPerShard;
+      return this;
+    }
+
+    /**
+     * Limits the bytes of records awaiting storage. When reached, shard processing pauses until
+     * storage completes enough writes, instead of buffering records on the heap. Zero means no
+     * limit. Defaults to 64MiB.
+     */
+    public Builder maxInFlightBytes(int maxInFlightBytes) {
+      if (maxInFlightBytes < 0) {
+        throw new IllegalArgumentException("maxInFlightBytes must not be negative");
+      }
+      this.maxInFlightBytes = maxInFlightBytes;
+      return this;
+    }
+
+    /**
+     * When true, records are pushed to this collector with enhanced fan-out ({@code
+     * SubscribeToShard}), which gives it dedicated read throughput per shard, and delivers records
+     * in well under a second. When false, shards are polled with {@code GetRecords}, sharing the
+     * read limit of each shard with other consumers of the stream, but costing nothing extra.
+     * Defaults to true.
+     *
+     * @see #maxRecords(int)
+     * @see #idleTimeBetweenReadsMillis(long)
+     */
+    public Builder enhancedFanOut(boolean enhancedFanOut) {
+      this.enhancedFanOut = enhancedFanOut;
+      return this;
+    }
+
+    /**
+     * When polling, the maximum records to get from a shard in each call, up to 10000. Zero uses
+     * the KCL default, which is the default.
+     */
+    public Builder maxRecords(int maxRecords) {
+      if (maxRecords < 0 || maxRecords > 10000) {
+        throw new IllegalArgumentException("maxRecords must be between 0 and 10000");
+      }
+      this.maxRecords = maxRecords;
+      return this;
+    }
+
+    /**
+     * When polling, how long to wait between calls to a shard. Lower values reduce latency, but
+     * each shard only supports five calls per second across all consumers. Zero uses the KCL
+     * default, which is the default.
+     */
+    public Builder idleTimeBetweenReadsMillis(long idleTimeBetweenReadsMillis) {
+      if (idleTimeBetweenReadsMillis < 0) {
+        throw new IllegalArgumentException("idleTimeBetweenReadsMillis must not be negative");
+      }
+      this.idleTimeBetweenReadsMillis = idleTimeBetweenReadsMillis;
+      return this;
+    }
+
+    /**
+     * Bounds the threads the KCL uses to process shards, which decode and store records of
+     * different shards in parallel. More shards than threads wait their turn instead of each
+     * getting a thread. Zero uses the KCL's unbounded pool. Defaults to the count of available
+     * processors, and at least 2.
+     */
+    public Builder processingThreads(int processingThreads) {
+      if (processingThreads < 0) {
+        throw new IllegalArgumentException("processingThreads must not be negative");
+      }
+      this.processingThreads = processingThreads;
+      return this;
+    }
+
+    /**
+     * The maximum count of shards this collector processes at the same time, leaving the rest to
+     * other collectors sharing the {@link #appName(String) app name}. Zero means no limit, which
+     * is the default.
+     */
+    public Builder maxLeasesForWorker(int maxLeasesForWorker) {
+      if (maxLeasesForWorker < 0) {
+        throw new IllegalArgumentException("maxLeasesForWorker must not be negative");
+      }
+      this.maxLeasesForWorker = maxLeasesForWorker;
+      return this;
+    }
+
+    /**
+     * Identifies this collector in the lease table. Set a name that survives restarts, such as a
+     * pod name, so that a restarted collector renews the leases it held instead of waiting for
+     * them to expire. Defaults to the host name plus a random UUID.
+     */
+    public Builder workerId(String workerId) {
+      this.workerId = workerId;
+      return this;
+    }
+
+    /**
+     * How long a lease goes without renewal before another collector takes it over. Lower values
+     * hand shards from a stopped collector to others sooner, at the cost of more DynamoDB reads
+     * and writes. Zero uses the KCL default of ten seconds, which is the default.
+     */
+    public Builder failoverTimeMillis(long failoverTimeMillis) {
+      if (failoverTimeMillis < 0) {
+        throw new IllegalArgumentException("failoverTimeMillis must not be negative");
+      }
+      this.failoverTimeMillis = failoverTimeMillis;
+      return this;
+    }
+
+    /**
+     * How many leases a collector takes from others at a time when balancing shards, such as when
+     * a new collector joins. Zero uses the KCL default of one, which is the default.
+     */
+    public Builder maxLeasesToStealAtOneTime(int maxLeasesToStealAtOneTime) {
+      if (maxLeasesToStealAtOneTime < 0) {
+        throw new IllegalArgumentException("maxLeasesToStealAtOneTime must not be negative");
+      }
+      this.maxLeasesToStealAtOneTime = maxLeasesToStealAtOneTime;
+      return this;
+    }
+
+    /**
+     * How long {@link KinesisCollector#close()} waits for shards to checkpoint their stored
+     * records before stopping, so that the collectors taking over don't process them again. Zero
+     * stops without checkpointing. Defaults to 20000.
+     */
+    public Builder gracefulShutdownTimeoutMillis(long gracefulShutdownTimeoutMillis) {
+      if (gracefulShutdownTimeoutMillis < 0) {
+        throw new IllegalArgumentException("gracefulShutdownTimeoutMillis must not be negative");
+      }
+      this.gracefulShutdownTimeoutMillis = gracefulShutdownTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * How often each shard is checkpointed, which records progress so that a restarted or
+     * rebalanced collector continues from there. Shards are only checkpointed past records whose
+     * spans were written to storage, or dropped. Shorter intervals replay fewer records after a
+     * restart, but cost more DynamoDB writes. Defaults to 10000.
+     */
+    public Builder checkpointIntervalMillis(long checkpointIntervalMillis) {
+      if (checkpointIntervalMillis < 0) {
+        throw new IllegalArgumentException("checkpointIntervalMillis must not be negative");
+      }
+      this.checkpointIntervalMillis = checkpointIntervalMillis;
+      return this;
+    }
+
+    /**
+     * When false, the KCL doesn't publish its metrics to CloudWatch, which otherwise costs API
+     * calls and CPU on every node. Lag, lease and processing metrics remain available from this
+     * collector, such as {@link KinesisCollector#millisBehindLatest()}. Defaults to true.
+     */
+    public Builder cloudWatchMetrics(boolean cloudWatchMetrics) {
+      this.cloudWatchMetrics = cloudWatchMetrics;
+      return this;
+    }
+
+    /**
+     * When positive, {@link KinesisCollector#check()} fails while any shard this collector
+     * processes is further behind the tip of the stream, so that a load balancer or autoscaler can
+     * react before the backlog shows as missing traces. Defaults to zero, which doesn't check lag.
+     */
+    public Builder maxMillisBehindLatest(long maxMillisBehindLatest) {
+      if (maxMillisBehindLatest < 0) {
+        throw new IllegalArgumentException("maxMillisBehindLatest must not be negative");
+      }
+      this.maxMillisBehindLatest = maxMillisBehindLatest;
+      return this;
+    }
+
     @Override
     public KinesisCollector build() {
       return new KinesisCollector(this);
@@ -88,30 +330,64 @@ public final class KinesisCollector extends CollectorComponent {
     Builder() {}
   }
 
-  private final Collector collector;
   private final CollectorMetrics metrics;
   private final String appName;
-  private final String streamName;
+  private final List<String> streamNames;
   private final AwsCredentialsProvider credentialsProvider;
   private final String regionName;
+  private final StorageGate gate;
+  private final long checkpointIntervalMillis;
+  private final int maxBytesPerSecondPerShard;
+  private final boolean cloudWatchMetrics;
+  private final long maxMillisBehindLatest;
+  private final ShardMetrics shardMetrics = new ShardMetrics();
+  private final boolean enhancedFanOut;
+  private final int maxRecords;
+  private final long idleTimeBetweenReadsMillis;
+  private final int processingThreads;
+  private final int maxLeasesForWorker;
+  private final String workerId;
+  private final long failoverTimeMillis;
+  private final int maxLeasesToStealAtOneTime;
+  private final long gracefulShutdownTimeoutMillis;
 
   private final Executor executor;
   private Scheduler scheduler;
-  private KinesisAsyncClient kinesisClient;
+  private volatile KinesisAsyncClient kinesisClient;
   private DynamoDbAsyncClient dynamoClient;
   private CloudWatchAsyncClient cloudWatchClient;
+  private volatile boolean closed;
+  private volatile Throwable schedulerFailure;
+  private final AtomicBoolean streamCheckInFlight = new AtomicBoolean();
+  private volatile CheckResult streamCheck = CheckResult.OK;
+  private volatile long nextStreamCheckNanos;
 
   KinesisCollector(Builder builder) {
-    this.collector = builder.delegate.build();
+    if (builder.storage == null) throw new NullPointerException("storage == null");
     this.metrics = builder.metrics;
     this.appName = builder.appName;
-    this.streamName = builder.streamName;
+    this.streamNames = builder.streamNames;
     this.credentialsProvider = builder.credentialsProvider;
     this.regionName = builder.regionName;
+    this.gate =
+        new StorageGate(builder.storage, builder.sampler, metrics, builder.maxInFlightBytes);
+    this.checkpointIntervalMillis = builder.checkpointIntervalMillis;
+    this.maxBytesPerSecondPerShard = builder.maxBytesPerSecondPerShard;
+    this.cloudWatchMetrics = builder.cloudWatchMetrics;
+    this.maxMillisBehindLatest = builder.maxMillisBehindLatest;
+    this.enhancedFanOut = builder.enhancedFanOut;
+    this.maxRecords = builder.maxRecords;
+    this.idleTimeBetweenReadsMillis = builder.idleTimeBetweenReadsMillis;
+    this.processingThreads = builder.processingThreads;
+    this.maxLeasesForWorker = builder.maxLeasesForWorker;
+    this.workerId = builder.workerId;
+    this.failoverTimeMillis = builder.failoverTimeMillis;
+    this.maxLeasesToStealAtOneTime = builder.maxLeasesToStealAtOneTime;
+    this.gracefulShutdownTimeoutMillis = builder.gracefulShutdownTimeoutMillis;
 
     executor = Executors.newSingleThreadExecutor(r -> {
       Thread thread = new Thread(r);
-      thread.setName("KinesisCollector-" + streamName);
+      thread.setName("KinesisCollector-" + String.join(",", streamNames));
       thread.setDaemon(true);
       return thread;
     });
@@ -119,11 +395,13 @@ public final class KinesisCollector extends CollectorComponent {
 
   @Override
   public KinesisCollector start() {
-    String workerId;
-    try {
-      workerId = InetAddress.getLocalHost().getCanonicalHostName() + ":" + UUID.randomUUID();
-    } catch (UnknownHostException e) {
-      workerId = UUID.randomUUID().toString();
+    String workerId = this.workerId;
+    if (workerId == null || workerId.isEmpty()) {
+      try {
+        workerId = InetAddress.getLocalHost().getCanonicalHostName() + ":" + UUID.randomUUID();
+      } catch (UnknownHostException e) {
+        workerId = UUID.randomUUID().toString();
+      }
     }
 
     Region region = Region.of(regionName);
@@ -143,39 +421,271 @@ public final class KinesisCollector extends CollectorComponent {
         .region(region)
         .build();
 
-    ShardRecordProcessorFactory processorFactory =
-        () -> new KinesisSpanProcessor(collector, metrics);
+    ShardRecordProcessorFactory processorFactory = new ShardRecordProcessorFactory() {
+      @Override public ShardRecordProcessor shardRecordProcessor() {
+        return newProcessor(streamNames.get(0));
+      }
+
+      @Override public ShardRecordProcessor shardRecordProcessor(StreamIdentifier stream) {
+        return newProcessor(stream.streamName());
+      }
+    };
+
+    ConfigsBuilder configsBuilder;
+    if (streamNames.size() == 1) {
+      configsBuilder = new ConfigsBuilder(streamNames.get(0), appName, kinesisClient,
+          dynamoClient, cloudWatchClient, workerId, processorFactory);
+    } else {
+      configsBuilder = new ConfigsBuilder(new StreamsTracker(), appName, kinesisClient,
+          dynamoClient, cloudWatchClient, workerId, processorFactory);
+    }
+
+    CoordinatorConfig coordinatorConfig = configsBuilder.coordinatorConfig();
+    if (processingThreads > 0) {
+      coordinatorConfig.coordinatorFactory(new BoundedCoordinatorFactory(processingThreads));
+    }
+    LeaseManagementConfig leaseManagementConfig = configsBuilder.leaseManagementConfig();
+    if (maxLeasesForWorker > 0) leaseManagementConfig.maxLeasesForWorker(maxLeasesForWorker);
+    if (failoverTimeMillis > 0) leaseManagementConfig.failoverTimeMillis(failoverTimeMillis);
+    if (maxLeasesToStealAtOneTime > 0) {
+      leaseManagementConfig.maxLeasesToStealAtOneTime(maxLeasesToStealAtOneTime);
+    }
 
-    ConfigsBuilder configsBuilder = new ConfigsBuilder(
-        streamName, appName, kinesisClient, dynamoClient, cloudWatchClient,
-        workerId, processorFactory);
+    MetricsConfig metricsConfig = configsBuilder.metricsConfig();
+    if (!cloudWatchMetrics) metricsConfig.metricsFactory(new NullMetricsFactory());
 
     scheduler = new Scheduler(
         configsBuilder.checkpointConfig(),
-        configsBuilder.coordinatorConfig(),
-        configsBuilder.leaseManagementConfig(),
+        coordinatorConfig,
+        leaseManagementConfig,
         configsBuilder.lifecycleConfig(),
-        configsBuilder.metricsConfig(),
-        configsBuilder.processorConfig(),
-        configsBuilder.retrievalConfig());
+        metricsConfig,
+        // so that idle shards are still checkpointed once their last records are stored
+        configsBuilder.processorConfig().callProcessRecordsEvenForEmptyRecordList(true),
+        retrievalConfig(configsBuilder));
 
-    executor.execute(scheduler);
+    Scheduler started = scheduler;
+    executor.execute(() -> {
+      try {
+        started.run();
+      } catch (RuntimeException | Error e) {
+        schedulerFailure = e;
+        throw e;
+      }
+      if (!closed) schedulerFailure = new IllegalStateException("Kinesis scheduler stopped");
+    });
     return this;
   }
 
+  /** Enhanced fan-out is the KCL default, so this only needs to configure polling. */
+  RetrievalConfig retrievalConfig(ConfigsBuilder configsBuilder) {
+    RetrievalConfig retrievalConfig = configsBuilder.retrievalConfig();
+    if (enhancedFanOut) return retrievalConfig;
+    PollingConfig polling = streamNames.size() == 1
+        ? new PollingConfig(streamNames.get(0), kinesisClient)
+        : new PollingConfig(kinesisClient);
+    if (maxRecords > 0) polling.maxRecords(maxRecords);
+    if (idleTimeBetweenReadsMillis > 0) {
+      polling.idleTimeBetweenReadsInMillis(idleTimeBetweenReadsMillis);
+    }
+    return retrievalConfig.retrievalSpecificConfig(polling);
+  }
+
+  KinesisSpanProcessor newProcessor(String streamName) {
+    return new KinesisSpanProcessor(metrics, gate, checkpointIntervalMillis, shardMetrics,
+        maxBytesPerSecondPerShard, streamName);
+  }
+
+  /**
+   * Lists the streams to consume in multi-stream mode. Their leases are keyed by account, name and
+   * creation time, so this describes each stream when the scheduler first asks for them. A stream
+   * that can't be described is skipped and retried the next time the scheduler asks.
+   */
+  final class StreamsTracker implements MultiStreamTracker {
+    volatile List<StreamConfig> streamConfigs;
+
+    @Override public List<StreamConfig> streamConfigList() {
+      List<StreamConfig> result = streamConfigs;
+      if (result != null) return result;
+      result = new ArrayList<>(streamNames.size());
+      for (String streamName : streamNames) {
+        StreamDescriptionSummary summary = describeStream(streamName);
+        if (summary == null) continue;
+        StreamIdentifier stream = StreamIdentifier.multiStreamInstance(
+            Arn.fromString(summary.streamARN()),
+            summary.streamCreationTimestamp().getEpochSecond());
+        result.add(new StreamConfig(stream,
+            InitialPositionInStreamExtended.newInitialPosition(InitialPositionInStream.LATEST)));
+      }
+      if (result.size() == streamNames.size()) streamConfigs = result;
+      return result;
+    }
+
+    /** Returns null if the stream couldn't be described, as this runs on the scheduler thread. */
+    StreamDescriptionSummary describeStream(String streamName) {
+      try {
+        return kinesisClient.describeStreamSummary(b -> b.streamName(streamName))
+            .get(STREAM_CHECK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .streamDescriptionSummary();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        logger.log(Level.WARNING, "Couldn't describe stream " + streamName, e.getCause());
+      } catch (TimeoutException | RuntimeException e) {
+        logger.log(Level.WARNING, "Couldn't describe stream " + streamName, e);
+      }
+      return null;
+    }
+
+    /** Streams are only removed by configuration, so their leases are kept for a redeploy. */
+    @Override
+    public FormerStreamsLeasesDeletionStrategy formerStreamsLeasesDeletionStrategy() {
+      return new FormerStreamsLeasesDeletionStrategy.NoLeaseDeletionStrategy();
+    }
+  }
+
+  /** Replaces the KCL's unbounded shard processing pool with a fixed one. */
+  final class BoundedCoordinatorFactory extends SchedulerCoordinatorFactory {
+    final int threads;
+
+    BoundedCoordinatorFactory(int threads) {
+      this.threads = threads;
+    }
+
+    @Override public ExecutorService createExecutorService() {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r);
+        thread.setName(
+            "KinesisCollector-" + String.join(",", streamNames) + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Fails if the KCL scheduler stopped, the stream isn't active, or a shard is further behind than
+   * {@link Builder#maxMillisBehindLatest(long)}. The stream status is refreshed in the background
+   * at most every 30 seconds, to avoid throttling by the DescribeStreamSummary limit shared by the
+   * account, so this returns the last known status without blocking.
+   */
   @Override
   public CheckResult check() {
-    // TODO should check the stream exists
-    return CheckResult.OK;
+    KinesisAsyncClient client = kinesisClient;
+    if (client == null) return CheckResult.OK; // not started
+    Throwable failure = schedulerFailure;
+    if (failure != null) return CheckResult.failed(failure);
+    refreshStreamCheck(client);
+    CheckResult result = streamCheck;
+    if (!result.ok()) return result;
+    return shardMetrics.check(maxMillisBehindLatest);
+  }
+
+  /** Describes the streams unless the last result is fresh or a refresh is already in flight. */
+  void refreshStreamCheck(KinesisAsyncClient client) {
+    if (System.nanoTime() - nextStreamCheckNanos < 0) return;
+    if (!streamCheckInFlight.compareAndSet(false, true)) return;
+    List<CompletableFuture<CheckResult>> results = new ArrayList<>(streamNames.size());
+    for (String streamName : streamNames) results.add(checkStream(client, streamName));
+    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).whenComplete((v, t) -> {
+      CheckResult result = CheckResult.OK;
+      for (CompletableFuture<CheckResult> stream : results) {
+        result = stream.join(); // never fails, see checkStream
+        if (!result.ok()) break;
+      }
+      streamCheck = result;
+      nextStreamCheckNanos = System.nanoTime() + STREAM_CHECK_INTERVAL_NANOS;
+      streamCheckInFlight.set(false);
+    });
+  }
+
+  static CompletableFuture<CheckResult> checkStream(KinesisAsyncClient client, String streamName) {
+    CompletableFuture<StreamStatus> status;
+    try {
+      status = client.describeStreamSummary(b -> b.streamName(streamName))
+          .thenApply(r -> r.streamDescriptionSummary().streamStatus());
+    } catch (RuntimeException e) {
+      return CompletableFuture.completedFuture(CheckResult.failed(e));
+    }
+    return status.orTimeout(STREAM_CHECK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        .handle((s, t) -> {
+          if (t != null) {
+            return CheckResult.failed(t instanceof CompletionException ? t.getCause() : t);
+          }
+          if (s == StreamStatus.ACTIVE || s == StreamStatus.UPDATING) return CheckResult.OK;
+          return CheckResult.failed(new IllegalStateException("Stream " + streamName + " is " + s));
+        });
+  }
+
+  /** Total time shard processing was paused waiting for in-flight bytes to be stored. */
+  public long throttledNanos() {
+    return gate.throttledNanos.sum();
+  }
+
+  /**
+   * Count of failed storage writes retried. Their records aren't checkpointed until stored, or
+   * dropped once retries are exhausted.
+   */
+  public long storeRetryCount() {
+    return gate.storeRetries.sum();
+  }
+
+  /** Count of shards this collector currently processes. */
+  public int leaseCount() {
+    return shardMetrics.leaseCount();
+  }
+
+  /** How far the most behind shard was from the tip of the stream, as of its last batch. */
+  public long millisBehindLatest() {
+    return shardMetrics.maxMillisBehindLatest();
+  }
+
+  /** Count of record batches processed across all shards. */
+  public long processBatchCount() {
+    return shardMetrics.batches.sum();
+  }
+
+  /** Count of records processed across all shards. */
+  public long processRecordCount() {
+    return shardMetrics.records.sum();
+  }
+
+  /** Count of records dropped as their shard exceeded {@link Builder#maxBytesPerSecondPerShard}. */
+  public long rateLimitedRecordCount() {
+    return shardMetrics.rateLimited.sum();
+  }
+
+  /** Total time spent decoding batches and submitting them to storage. */
+  public long processLatencyNanos() {
+    return shardMetrics.processingNanos.sum();
+  }
+
+  /**
+   * Returns true if all shards checkpointed their stored records before the timeout. Each shard's
+   * processor waits for its outstanding writes in {@link KinesisSpanProcessor#shutdownRequested}.
+   */
+  boolean shutdownGracefully() {
+    try {
+      return scheduler.startGracefulShutdown()
+          .get(gracefulShutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      logger.log(Level.WARNING, "Graceful shutdown didn't complete; shutting down", e);
+    }
+    return false;
   }
 
   @Override
   public void close() {
+    closed = true;
     if (scheduler != null) {
-      scheduler.shutdown();
+      if (gracefulShutdownTimeoutMillis == 0 || !shutdownGracefully()) scheduler.shutdown();
     }
     if (kinesisClient != null) kinesisClient.close();
     if (dynamoClient != null) dynamoClient.close();
     if (cloudWatchClient != null) cloudWatchClient.close();
+    gate.close();
   }
 }
@@ -4,60 +4,227 @@
  */
 package zipkin2.collector.kinesis;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.kinesis.exceptions.KinesisClientLibException;
+import software.amazon.kinesis.exceptions.ShutdownException;
 import software.amazon.kinesis.lifecycle.events.InitializationInput;
 import software.amazon.kinesis.lifecycle.events.LeaseLostInput;
 import software.amazon.kinesis.lifecycle.events.ProcessRecordsInput;
 import software.amazon.kinesis.lifecycle.events.ShardEndedInput;
 import software.amazon.kinesis.lifecycle.events.ShutdownRequestedInput;
+import software.amazon.kinesis.processor.RecordProcessorCheckpointer;
 import software.amazon.kinesis.processor.ShardRecordProcessor;
 import software.amazon.kinesis.retrieval.KinesisClientRecord;
-import zipkin2.Callback;
-import zipkin2.collector.Collector;
+import zipkin2.Span;
 import zipkin2.collector.CollectorMetrics;
 
+/**
+ * Stores the records of one shard, checkpointing only past records whose spans are stored.
+ *
+ * <p>Writes complete out of order, so each batch of records is tracked until all of its writes
+ * complete. The shard is checkpointed at the last record of the newest batch stored along with all
+ * batches before it, at most once per {@link #checkpointIntervalNanos}.
+ */
 final class KinesisSpanProcessor implements ShardRecordProcessor {
-  static final Callback<Void> NOOP = new Callback<>() {
-    @Override
-    public void onSuccess(Void value) {
-    }
+  static final Logger logger = Logger.getLogger(KinesisSpanProcessor.class.getName());
+  // How long to wait for outstanding writes when the shard ends or the collector shuts down
+  static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
 
-    @Override
-    public void onError(Throwable t) {
+  /** Records of one {@link #processRecords} call, completed once all their writes complete. */
+  static final class Batch {
+    final String sequenceNumber;
+    final long subSequenceNumber;
+    // One per record, plus one released once all records were submitted
+    final AtomicInteger remaining;
+
+    Batch(KinesisClientRecord last, int records) {
+      this.sequenceNumber = last.sequenceNumber();
+      this.subSequenceNumber = last.subSequenceNumber();
+      this.remaining = new AtomicInteger(records + 1);
     }
-  };
+  }
 
-  final Collector collector;
   final CollectorMetrics metrics;
+  final StorageGate gate;
+  final ShardMetrics shardMetrics;
+  final RecordDecoder decoder;
+  final TokenBucket rateLimit; // null when unlimited
+  final String streamName;
+  final long checkpointIntervalNanos;
+  // Batches with writes outstanding, in the order received
+  final Deque<Batch> pending = new ArrayDeque<>(); // guarded by itself
+  Batch stored; // the newest batch to checkpoint, guarded by pending
+  long lastCheckpointNanos = System.nanoTime();
+  String shardId = "";
 
-  KinesisSpanProcessor(Collector collector, CollectorMetrics metrics) {
-    this.collector = collector;
+  KinesisSpanProcessor(CollectorMetrics metrics, StorageGate gate, long checkpointIntervalMillis) {
+    this(metrics, gate, checkpointIntervalMillis, new ShardMetrics(), 0, "");
+  }
+
+  KinesisSpanProcessor(CollectorMetrics metrics, StorageGate gate, long checkpointIntervalMillis,
+      ShardMetrics shardMetrics, int maxBytesPerSecond, String streamName) {
     this.metrics = metrics;
+    this.gate = gate;
+    this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMillis);
+    this.shardMetrics = shardMetrics;
+    this.decoder = new RecordDecoder(gate.writer);
+    this.rateLimit = maxBytesPerSecond > 0 ? new TokenBucket(maxBytesPerSecond) : null;
+    this.streamName = streamName;
   }
 
   @Override
   public void initialize(InitializationInput initializationInput) {
+    // Shard IDs are only unique within a stream
+    shardId = streamName + "/" + initializationInput.shardId();
+    shardMetrics.leased(shardId);
   }
 
   @Override
   public void processRecords(ProcessRecordsInput processRecordsInput) {
-    for (KinesisClientRecord record : processRecordsInput.records()) {
-      byte[] serialized = new byte[record.data().remaining()];
-      record.data().get(serialized);
+    long start = System.nanoTime();
+    List<KinesisClientRecord> records = processRecordsInput.records();
+    if (!records.isEmpty()) {
+      Batch batch = new Batch(records.get(records.size() - 1), records.size());
+      synchronized (pending) {
+        pending.addLast(batch);
+      }
+      if (!store(records, batch)) return; // interrupted
+      completed(batch); // all records are submitted
+    }
+    shardMetrics.processed(shardId, processRecordsInput.millisBehindLatest(), records.size(),
+        System.nanoTime() - start);
+    maybeCheckpoint(processRecordsInput.checkpointer());
+  }
+
+  /** Returns false if interrupted before all records were submitted. */
+  boolean store(List<KinesisClientRecord> records, Batch batch) {
+    Runnable onComplete = () -> completed(batch);
+    for (KinesisClientRecord record : records) {
+      ByteBuffer serialized = record.data();
+      int size = serialized.remaining();
       metrics.incrementMessages();
-      metrics.incrementBytes(serialized.length);
-      collector.acceptSpans(serialized, NOOP); // async
+      metrics.incrementBytes(size);
+
+      if (rateLimit != null && !rateLimit.tryAcquire(size)) {
+        metrics.incrementMessagesDropped();
+        shardMetrics.rateLimited.increment();
+        onComplete.run();
+        continue;
+      }
+
+      int permits;
+      try {
+        permits = gate.acquire(size);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt(); // shutting down
+        synchronized (pending) {
+          pending.remove(batch); // never checkpoint past records not stored
+        }
+        return false;
+      }
+      List<Span> spans;
+      try {
+        spans = decoder.decode(serialized);
+      } catch (RuntimeException e) {
+        gate.release(permits);
+        metrics.incrementMessagesDropped();
+        logger.log(Level.WARNING, "Cannot decode spans", e);
+        onComplete.run();
+        continue;
+      }
+      gate.store(spans, permits, onComplete);
+    }
+    return true;
+  }
+
+  void completed(Batch batch) {
+    if (batch.remaining.decrementAndGet() != 0) return;
+    synchronized (pending) {
+      while (!pending.isEmpty() && pending.peekFirst().remaining.get() == 0) {
+        stored = pending.pollFirst();
+      }
+      pending.notifyAll();
+    }
+  }
+
+  void maybeCheckpoint(RecordProcessorCheckpointer checkpointer) {
+    long now = System.nanoTime();
+    if (now - lastCheckpointNanos < checkpointIntervalNanos) return;
+    if (checkpointStored(checkpointer)) lastCheckpointNanos = now;
+  }
+
+  /** Returns true if there was a stored batch, and it was checkpointed. */
+  boolean checkpointStored(RecordProcessorCheckpointer checkpointer) {
+    Batch batch;
+    synchronized (pending) {
+      batch = stored;
+      stored = null;
+    }
+    if (batch == null) return false;
+    try {
+      checkpointer.checkpoint(batch.sequenceNumber, batch.subSequenceNumber);
+      return true;
+    } catch (ShutdownException e) {
+      return false; // the lease was lost, so another worker continues from its last checkpoint
+    } catch (KinesisClientLibException e) { // such as throttling: retry later
+      logger.log(Level.FINE, "Cannot checkpoint", e);
+      synchronized (pending) {
+        if (stored == null) stored = batch;
+      }
+      return false;
+    }
+  }
+
+  /** Returns true if all writes completed before the timeout. */
+  boolean awaitStored(long timeoutMillis) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (pending) {
+      while (!pending.isEmpty()) {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) return false;
+        try {
+          pending.wait(remainingMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return true;
     }
   }
 
   @Override
   public void leaseLost(LeaseLostInput leaseLostInput) {
+    // Another worker now owns the shard, so it can't be checkpointed from here.
+    shardMetrics.released(shardId);
   }
 
+  /** Child shards aren't processed until this one is checkpointed at its end. */
   @Override
   public void shardEnded(ShardEndedInput shardEndedInput) {
+    shardMetrics.released(shardId);
+    if (!awaitStored(SHUTDOWN_TIMEOUT_MILLIS)) {
+      logger.warning("Timed out storing the end of a shard; it will be processed again");
+      return;
+    }
+    try {
+      shardEndedInput.checkpointer().checkpoint();
+    } catch (KinesisClientLibException e) {
+      logger.log(Level.WARNING, "Cannot checkpoint the end of a shard", e);
+    }
   }
 
   @Override
   public void shutdownRequested(ShutdownRequestedInput shutdownRequestedInput) {
+    shardMetrics.released(shardId);
+    awaitStored(SHUTDOWN_TIMEOUT_MILLIS);
+    checkpointStored(shutdownRequestedInput.checkpointer());
   }
 }
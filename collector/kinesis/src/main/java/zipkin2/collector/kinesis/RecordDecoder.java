@@ -0,0 +1,289 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.kinesis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import zipkin2.Span;
+import zipkin2.SpanBytesDecoderDetector;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.collector.CollectorMetrics;
+import zipkin2.collector.CollectorSampler;
+import zipkin2.collector.aws.internal.SpanWriter;
+
+/**
+ * Decodes and samples the spans of a record, counting them and those dropped. For proto3 and json
+ * v2 lists, only the trace ID and debug flag of each span are read first, so spans the sampler
+ * drops aren't decoded. Other encodings are decoded, then sampled.
+ *
+ * <p>The spans returned are already sampled, so {@link StorageGate} stores them as is. This holds
+ * state while scanning a span, so each shard's processor has its own instance.
+ */
+final class RecordDecoder {
+  static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  static final int LIST_OF_SPANS_KEY = (1 << 3) | 2, TRACE_ID_FIELD = 1, DEBUG_FIELD = 12;
+  static final byte[] TRACE_ID_KEY = {'t', 'r', 'a', 'c', 'e', 'I', 'd'};
+  static final byte[] DEBUG_KEY = {'d', 'e', 'b', 'u', 'g'};
+
+  final SpanWriter writer;
+  final CollectorSampler sampler;
+  final CollectorMetrics metrics;
+  String traceId; // of the span being scanned
+  boolean debug; // of the span being scanned
+
+  RecordDecoder(SpanWriter writer) {
+    this.writer = writer;
+    this.sampler = writer.sampler();
+    this.metrics = writer.metrics();
+  }
+
+  /**
+   * Decodes directly from the record's buffer, which may be read-only, without a copy. Returns the
+   * spans the sampler keeps.
+   */
+  List<Span> decode(ByteBuffer serialized) {
+    SpanBytesDecoder decoder =
+        (SpanBytesDecoder) SpanBytesDecoderDetector.decoderForListMessage(serialized.duplicate());
+    if (sampler == CollectorSampler.ALWAYS_SAMPLE) {
+      return writer.sample(decoder.decodeList(serialized));
+    }
+
+    List<ByteBuffer> sampled = new ArrayList<>();
+    int count;
+    if (decoder == SpanBytesDecoder.PROTO3) {
+      count = sampleProto3(serialized.duplicate(), sampled);
+    } else if (decoder == SpanBytesDecoder.JSON_V2) {
+      count = sampleJson(serialized.duplicate(), sampled);
+    } else {
+      return writer.sample(decoder.decodeList(serialized));
+    }
+    if (sampled.size() == count) {
+      List<Span> spans = decoder.decodeList(serialized);
+      metrics.incrementSpans(spans.size());
+      return spans;
+    }
+
+    int dropped = count - sampled.size();
+    metrics.incrementSpans(count);
+    metrics.incrementSpansDropped(dropped);
+    List<Span> spans = new ArrayList<>(sampled.size());
+    for (ByteBuffer span : sampled) {
+      if (decoder == SpanBytesDecoder.PROTO3) {
+        spans.addAll(decoder.decodeList(span)); // a list of one span
+      } else {
+        spans.add(decoder.decodeOne(span));
+      }
+    }
+    return spans;
+  }
+
+  /** Adds each sampled entry of the ListOfSpans, returning the count of all entries. */
+  int sampleProto3(ByteBuffer buffer, List<ByteBuffer> sampled) {
+    int count = 0, limit = buffer.limit();
+    while (buffer.hasRemaining()) {
+      int start = buffer.position();
+      if (readVarint(buffer) != LIST_OF_SPANS_KEY) throw malformed("proto3");
+      int length = readVarint(buffer);
+      int end = buffer.position() + length;
+      if (length < 0 || end > limit) throw malformed("proto3");
+      count++;
+      traceId = null;
+      debug = false;
+      scanProto3Span(buffer, end);
+      if (isSampled()) sampled.add(buffer.duplicate().limit(end).position(start));
+      buffer.limit(limit).position(end);
+    }
+    return count;
+  }
+
+  void scanProto3Span(ByteBuffer buffer, int end) {
+    buffer.limit(end); // so that a malformed field can't read past the span
+    while (buffer.hasRemaining()) {
+      int key = readVarint(buffer);
+      int field = key >>> 3;
+      switch (key & 7) {
+        case 0:
+          long value = readVarint64(buffer);
+          if (field == DEBUG_FIELD) debug = value != 0;
+          break;
+        case 1:
+          buffer.position(buffer.position() + 8);
+          break;
+        case 2:
+          int length = readVarint(buffer);
+          if (field == TRACE_ID_FIELD) {
+            traceId = lowerHex(buffer, length);
+          } else {
+            buffer.position(buffer.position() + length);
+          }
+          break;
+        case 5:
+          buffer.position(buffer.position() + 4);
+          break;
+        default:
+          throw malformed("proto3");
+      }
+    }
+  }
+
+  /** Adds each sampled span object of the list, returning the count of all spans. */
+  int sampleJson(ByteBuffer buffer, List<ByteBuffer> sampled) {
+    int count = 0;
+    int i = buffer.position() + 1, limit = buffer.limit(); // after '['
+    while (i < limit) {
+      byte b = buffer.get(i);
+      if (b == ']') break;
+      if (b != '{') {
+        i++; // whitespace or comma
+        continue;
+      }
+      traceId = null;
+      debug = false;
+      int end = scanJsonSpan(buffer, i, limit);
+      count++;
+      if (isSampled()) sampled.add(buffer.duplicate().limit(end).position(i));
+      i = end;
+    }
+    return count;
+  }
+
+  /** Returns the index after the object starting at {@code i}, reading its top-level fields. */
+  int scanJsonSpan(ByteBuffer buffer, int i, int limit) {
+    int depth = 0;
+    boolean expectKey = false;
+    byte[] valueOf = null; // the top-level key whose value is next
+    for (; i < limit; i++) {
+      byte b = buffer.get(i);
+      switch (b) {
+        case '"':
+          int end = endOfString(buffer, i + 1, limit);
+          if (depth == 1 && expectKey) {
+            valueOf = equals(buffer, i + 1, end, TRACE_ID_KEY) ? TRACE_ID_KEY
+                : equals(buffer, i + 1, end, DEBUG_KEY) ? DEBUG_KEY : null;
+          } else if (depth == 1 && valueOf == TRACE_ID_KEY) {
+            traceId = normalizeTraceId(buffer, i + 1, end);
+          }
+          expectKey = false;
+          i = end;
+          break;
+        case 't':
+          if (depth == 1 && valueOf == DEBUG_KEY) debug = true;
+          break;
+        case '{':
+        case '[':
+          depth++;
+          expectKey = depth == 1;
+          break;
+        case '}':
+        case ']':
+          if (--depth == 0) return i + 1;
+          break;
+        case ',':
+          if (depth == 1) {
+            expectKey = true;
+            valueOf = null;
+          }
+          break;
+      }
+    }
+    throw malformed("json");
+  }
+
+  /** Spans without a readable trace ID are kept, so that decoding reports what's wrong. */
+  boolean isSampled() {
+    if (traceId == null) return true;
+    try {
+      return sampler.isSampled(traceId, debug);
+    } catch (RuntimeException e) {
+      return true;
+    }
+  }
+
+  static int endOfString(ByteBuffer buffer, int i, int limit) {
+    for (; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (b == '\\') {
+        i++;
+      } else if (b == '"') {
+        return i;
+      }
+    }
+    throw malformed("json");
+  }
+
+  static boolean equals(ByteBuffer buffer, int start, int end, byte[] value) {
+    if (end - start != value.length) return false;
+    for (int i = 0; i < value.length; i++) {
+      if (buffer.get(start + i) != value[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the trace ID as {@link Span.Builder#traceId(String)} normalizes it, so that the sampler
+   * sees the ID the decoded span will have: lowercase, left-padded with zeros to 16 or 32
+   * characters, and 16 characters when the high 64 bits are zero. Invalid IDs are returned as is,
+   * left for decoding to report.
+   */
+  static String normalizeTraceId(ByteBuffer buffer, int start, int end) {
+    int length = end - start;
+    if (length == 0 || length > 32) return ascii(buffer, start, end);
+    char[] chars = new char[length <= 16 ? 16 : 32];
+    int offset = chars.length - length;
+    Arrays.fill(chars, 0, offset, '0');
+    for (int i = 0; i < length; i++) {
+      char c = (char) buffer.get(start + i);
+      if (c >= 'A' && c <= 'F') c += 'a' - 'A';
+      chars[offset + i] = c;
+    }
+    if (chars.length == 32 && isZeros(chars, 0, 16)) return new String(chars, 16, 16);
+    return new String(chars);
+  }
+
+  static boolean isZeros(char[] chars, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (chars[i] != '0') return false;
+    }
+    return true;
+  }
+
+  static String ascii(ByteBuffer buffer, int start, int end) {
+    char[] chars = new char[end - start];
+    for (int i = 0; i < chars.length; i++) chars[i] = (char) buffer.get(start + i);
+    return new String(chars);
+  }
+
+  static String lowerHex(ByteBuffer buffer, int length) {
+    char[] chars = new char[length * 2];
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get();
+      chars[i * 2] = HEX_DIGITS[(b >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  static int readVarint(ByteBuffer buffer) {
+    long value = readVarint64(buffer);
+    if (value > Integer.MAX_VALUE) throw malformed("proto3");
+    return (int) value;
+  }
+
+  static long readVarint64(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw malformed("proto3");
+  }
+
+  static IllegalArgumentException malformed(String encoding) {
+    return new IllegalArgumentException("Malformed " + encoding + " list of spans");
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.kinesis;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import zipkin2.CheckResult;
+
+/**
+ * Processing statistics of the shards leased by this collector, shared by their processors. These
+ * are what the KCL otherwise only publishes to CloudWatch.
+ */
+final class ShardMetrics {
+  // Leased shards to how far their last batch was behind the tip of the stream
+  final Map<String, Long> millisBehindLatest = new ConcurrentHashMap<>();
+  final LongAdder batches = new LongAdder(), records = new LongAdder();
+  final LongAdder processingNanos = new LongAdder();
+  final LongAdder rateLimited = new LongAdder();
+
+  void leased(String shardId) {
+    millisBehindLatest.put(shardId, 0L);
+  }
+
+  void released(String shardId) {
+    millisBehindLatest.remove(shardId);
+  }
+
+  void processed(String shardId, Long millisBehind, int recordCount, long nanos) {
+    if (millisBehind != null) millisBehindLatest.put(shardId, millisBehind);
+    batches.increment();
+    records.add(recordCount);
+    processingNanos.add(nanos);
+  }
+
+  int leaseCount() {
+    return millisBehindLatest.size();
+  }
+
+  /** Fails when a leased shard is further behind than the threshold. Zero doesn't check lag. */
+  CheckResult check(long maxMillisBehindLatest) {
+    if (maxMillisBehindLatest == 0) return CheckResult.OK;
+    for (Map.Entry<String, Long> entry : millisBehindLatest.entrySet()) {
+      if (entry.getValue() <= maxMillisBehindLatest) continue;
+      return CheckResult.failed(new IllegalStateException("Shard " + entry.getKey() + " is "
+          + entry.getValue() + "ms behind latest, over " + maxMillisBehindLatest + "ms"));
+    }
+    return CheckResult.OK;
+  }
+
+  long maxMillisBehindLatest() {
+    long max = 0L;
+    for (long millisBehind : millisBehindLatest.values()) max = Math.max(max, millisBehind);
+    return max;
+  }
+}
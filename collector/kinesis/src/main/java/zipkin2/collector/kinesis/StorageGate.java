@@ -0,0 +1,150 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.kinesis;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.collector.CollectorMetrics;
+import zipkin2.collector.CollectorSampler;
+import zipkin2.collector.aws.internal.SpanWriter;
+import zipkin2.storage.StorageComponent;
+
+/**
+ * Writes records to storage, notifying when each write completes so that shards are only
+ * checkpointed past stored records. When {@link #maxInFlightBytes} is positive, this also bounds
+ * the bytes of records awaiting storage. When full, the shard's processor blocks, which stops the
+ * KCL from fetching more records for it until storage catches up.
+ *
+ * <p>Spans are written with {@link SpanWriter}, which calls back once the write completes.
+ *
+ * <p>Failed writes are retried with backoff, keeping their permits meanwhile, as completing them
+ * would checkpoint past spans never stored. Retries are bounded, so that a write that never
+ * succeeds can't hold back the checkpoint forever, nor accumulate records while storage is down.
+ * Writes still failing after {@link #maxAttempts}, or failing with an {@link
+ * IllegalArgumentException}, which retrying won't fix, are counted as dropped and completed.
+ */
+final class StorageGate {
+  static final Logger logger = Logger.getLogger(StorageGate.class.getName());
+  static final long INITIAL_BACKOFF_MILLIS = 100, MAX_BACKOFF_MILLIS = 10_000;
+  // About 30 seconds of retries in total
+  static final int MAX_ATTEMPTS = 10;
+
+  final SpanWriter writer;
+  final int maxInFlightBytes;
+  final Semaphore inFlightBytes; // null when unbounded
+  final LongAdder throttledNanos = new LongAdder();
+  final LongAdder storeRetries = new LongAdder();
+  int maxAttempts = MAX_ATTEMPTS; // overridden in tests
+  // The thread is only started on the first retry
+  final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "KinesisCollector-storage-retry");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  StorageGate(StorageComponent storage, CollectorSampler sampler, CollectorMetrics metrics,
+      int maxInFlightBytes) {
+    this.writer = new SpanWriter(storage, sampler, metrics);
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.inFlightBytes = maxInFlightBytes > 0 ? new Semaphore(maxInFlightBytes) : null;
+  }
+
+  /**
+   * Blocks until the record can be admitted, returning the permits to {@link #release}. A record
+   * larger than the limit waits for all others to complete.
+   */
+  int acquire(int bytes) throws InterruptedException {
+    if (inFlightBytes == null) return 0;
+    int permits = Math.min(bytes, maxInFlightBytes);
+    if (inFlightBytes.tryAcquire(permits)) return permits;
+    long start = System.nanoTime();
+    try {
+      inFlightBytes.acquire(permits);
+    } finally {
+      throttledNanos.add(System.nanoTime() - start);
+    }
+    return permits;
+  }
+
+  void release(int permits) {
+    if (inFlightBytes != null && permits > 0) inFlightBytes.release(permits);
+  }
+
+  /**
+   * Stores spans already sampled by {@link RecordDecoder}, releasing the permits and running the
+   * callback once storage completes. A failed write is retried, so the callback only runs once the
+   * spans are stored, or dropped as described in the type docs.
+   */
+  void store(List<Span> sampled, int permits, Runnable onComplete) {
+    if (sampled.isEmpty()) {
+      release(permits);
+      onComplete.run();
+      return;
+    }
+
+    write(sampled, permits, onComplete, 0);
+  }
+
+  void write(List<Span> sampled, int permits, Runnable onComplete, int attempt) {
+    try {
+      writer.write(sampled, new Callback<>() {
+        @Override public void onSuccess(Void value) {
+          release(permits);
+          onComplete.run();
+        }
+
+        @Override public void onError(Throwable t) {
+          onStoreError(sampled, permits, onComplete, attempt, t);
+        }
+      });
+    } catch (RuntimeException e) {
+      onStoreError(sampled, permits, onComplete, attempt, e);
+    }
+  }
+
+  /** Schedules a retry, leaving the batch incomplete so that it isn't checkpointed meanwhile. */
+  void onStoreError(List<Span> sampled, int permits, Runnable onComplete, int attempt,
+      Throwable t) {
+    if (isPermanent(t) || attempt + 1 >= maxAttempts) {
+      release(permits);
+      writer.dropped(sampled, t);
+      onComplete.run();
+      return;
+    }
+    long backoffMillis =
+        Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16));
+    // Only the first failure is a warning, as storage that is down fails every write
+    logger.log(attempt == 0 ? Level.WARNING : Level.FINE,
+        "Cannot store " + sampled.size() + " spans; retrying in " + backoffMillis + "ms", t);
+    storeRetries.increment();
+    try {
+      retryExecutor.schedule(() -> write(sampled, permits, onComplete, attempt + 1),
+          backoffMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) { // closed: the records are processed again later
+      release(permits);
+    }
+  }
+
+  /** Retrying won't fix a write of invalid data, such as a span that can't be encoded. */
+  static boolean isPermanent(Throwable t) {
+    for (; t != null; t = t.getCause()) {
+      if (t instanceof IllegalArgumentException) return true;
+    }
+    return false;
+  }
+
+  void close() {
+    retryExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.kinesis;
+
+/**
+ * Admits up to a rate of bytes per second, allowing bursts of up to a second's worth. A record
+ * larger than that is admitted once the bucket is full, leaving it in debt.
+ *
+ * <p>This isn't thread-safe, as the KCL processes each shard's records on one thread at a time.
+ */
+final class TokenBucket {
+  final long bytesPerSecond;
+  double tokens;
+  long refilledNanos = System.nanoTime();
+
+  TokenBucket(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.tokens = bytesPerSecond;
+  }
+
+  boolean tryAcquire(int bytes) {
+    long now = System.nanoTime();
+    tokens = Math.min(bytesPerSecond, tokens + (now - refilledNanos) * bytesPerSecond / 1e9);
+    refilledNanos = now;
+    if (tokens < Math.min(bytes, bytesPerSecond)) return false;
+    tokens -= bytes;
+    return true;
+  }
+}
@@ -9,20 +9,37 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import software.amazon.kinesis.lifecycle.events.InitializationInput;
+import software.amazon.kinesis.lifecycle.events.LeaseLostInput;
 import software.amazon.kinesis.lifecycle.events.ProcessRecordsInput;
+import software.amazon.kinesis.lifecycle.events.ShardEndedInput;
+import software.amazon.kinesis.lifecycle.events.ShutdownRequestedInput;
+import software.amazon.kinesis.processor.RecordProcessorCheckpointer;
 import software.amazon.kinesis.retrieval.KinesisClientRecord;
+import zipkin2.Call;
+import zipkin2.Callback;
 import zipkin2.Span;
 import zipkin2.TestObjects;
 import zipkin2.codec.SpanBytesEncoder;
-import zipkin2.collector.Collector;
+import zipkin2.collector.CollectorSampler;
 import zipkin2.collector.InMemoryCollectorMetrics;
+import zipkin2.storage.ForwardingStorageComponent;
 import zipkin2.storage.InMemoryStorage;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.StorageComponent;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 /** We can't integration test the KinesisCollector without a local version of the service */
 class KinesisSpanProcessorTest {
@@ -33,22 +50,18 @@ class KinesisSpanProcessorTest {
   private InMemoryStorage storage;
   private final InMemoryCollectorMetrics metrics = new InMemoryCollectorMetrics();
 
-  private Collector collector;
   private KinesisSpanProcessor kinesisSpanProcessor;
 
   @BeforeEach void setup() {
     storage = InMemoryStorage.newBuilder().build();
-    collector = Collector.newBuilder(KinesisSpanProcessorTest.class)
-        .storage(storage)
-        .metrics(metrics)
-        .build();
 
-    kinesisSpanProcessor = new KinesisSpanProcessor(collector, metrics);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 10_000);
   }
 
   @AfterEach void teardown() {
+    kinesisSpanProcessor.gate.close();
     kinesisSpanProcessor = null;
-    collector = null;
     storage = null;
   }
 
@@ -102,6 +115,371 @@ class KinesisSpanProcessorTest {
     assertThat(metrics.bytes()).isEqualTo(encodedSpan.length);
   }
 
+  /** Records are decoded from their buffer, which the KCL doesn't necessarily back by an array */
+  @Test void recordDataReadOnly() {
+    byte[] message = SpanBytesEncoder.PROTO3.encodeList(spans);
+    KinesisClientRecord kinesisRecord = KinesisClientRecord.builder()
+        .data(ByteBuffer.wrap(message).asReadOnlyBuffer())
+        .build();
+
+    kinesisSpanProcessor.processRecords(
+        ProcessRecordsInput.builder().records(Collections.singletonList(kinesisRecord)).build());
+
+    assertThat(storage.spanStore().getTraces().size()).isEqualTo(spans.size());
+    assertThat(metrics.bytes()).isEqualTo(message.length);
+  }
+
+  @Test void lotsOfRecordsCollected_gated() {
+    StorageGate gate = new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 1024);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics, gate, 10_000);
+
+    kinesisSpanProcessor.processRecords(createTestData(10000));
+
+    assertThat(storage.spanStore().getTraces().size()).isEqualTo(10000);
+    assertThat(gate.inFlightBytes.availablePermits()).isEqualTo(1024);
+  }
+
+  @Test void gate_releasesPermitsWhenDecodingFails() {
+    StorageGate gate = new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 1024);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics, gate, 10_000);
+    byte[] encodedSpan = SpanBytesEncoder.THRIFT.encode(TestObjects.LOTS_OF_SPANS[0]);
+    KinesisClientRecord kinesisRecord =
+        KinesisClientRecord.builder().data(ByteBuffer.wrap(encodedSpan)).build();
+
+    kinesisSpanProcessor.processRecords(
+        ProcessRecordsInput.builder().records(Collections.singletonList(kinesisRecord)).build());
+
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(gate.inFlightBytes.availablePermits()).isEqualTo(1024);
+  }
+
+  @Test void gate_releasesPermitsOnceFailedWritesAreRetried() {
+    FailingStorage failing = new FailingStorage(3);
+    StorageGate gate = new StorageGate(failing, CollectorSampler.ALWAYS_SAMPLE, metrics, 1024);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics, gate, 10_000);
+
+    kinesisSpanProcessor.processRecords(createTestData(10));
+
+    assertThat(kinesisSpanProcessor.awaitStored(10_000)).isTrue();
+    assertThat(storage.spanStore().getTraces()).hasSize(10);
+    assertThat(metrics.spansDropped()).isZero();
+    assertThat(gate.storeRetries.sum()).isEqualTo(3);
+    assertThat(gate.inFlightBytes.availablePermits()).isEqualTo(1024);
+  }
+
+  @Test void checkpointsOnceStored() throws Exception {
+    DeferredStorage deferred = new DeferredStorage();
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(deferred, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1", "2"));
+    verify(checkpointer, never()).checkpoint(anyString(), anyLong());
+
+    deferred.complete();
+    kinesisSpanProcessor.processRecords(records(checkpointer)); // the KCL calls even when empty
+
+    verify(checkpointer).checkpoint("2", 0L);
+  }
+
+  /** Writes complete out of order, but the checkpoint only advances past contiguous ones. */
+  @Test void doesntCheckpointPastUnstoredRecords() throws Exception {
+    DeferredStorage deferred = new DeferredStorage();
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(deferred, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+    kinesisSpanProcessor.processRecords(records(checkpointer, "2"));
+    deferred.callbacks.remove(1).onSuccess(null); // the second batch completes first
+    kinesisSpanProcessor.processRecords(records(checkpointer));
+    verify(checkpointer, never()).checkpoint(anyString(), anyLong());
+
+    deferred.complete();
+    kinesisSpanProcessor.processRecords(records(checkpointer));
+
+    verify(checkpointer).checkpoint("2", 0L);
+  }
+
+  /** Records dropped before storage don't hold back the checkpoint, even if storage is down. */
+  @Test void checkpointsDroppedRecords() throws Exception {
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(new FailingStorage(Integer.MAX_VALUE), CollectorSampler.create(0.0f),
+            metrics, 0), 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+    KinesisClientRecord malformed = KinesisClientRecord.builder()
+        .data(ByteBuffer.wrap(new byte[] {'n', 'o'}))
+        .sequenceNumber("1")
+        .build();
+    KinesisClientRecord sampledOut = KinesisClientRecord.builder()
+        .data(ByteBuffer.wrap(SpanBytesEncoder.PROTO3.encodeList(spans)))
+        .sequenceNumber("2")
+        .build();
+
+    kinesisSpanProcessor.processRecords(ProcessRecordsInput.builder()
+        .records(asList(malformed, sampledOut))
+        .checkpointer(checkpointer)
+        .build());
+
+    verify(checkpointer).checkpoint("2", 0L);
+  }
+
+  /** A failed write isn't dropped: it is retried, and the checkpoint waits for it. */
+  @Test void doesntCheckpointPastFailedWrites() throws Exception {
+    FailingStorage failing = new FailingStorage(Integer.MAX_VALUE);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(failing, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+    assertThat(kinesisSpanProcessor.awaitStored(500)).isFalse();
+    kinesisSpanProcessor.processRecords(records(checkpointer));
+    verify(checkpointer, never()).checkpoint(anyString(), anyLong());
+    assertThat(metrics.spansDropped()).isZero();
+
+    failing.failuresLeft.set(0); // storage recovers
+    assertThat(kinesisSpanProcessor.awaitStored(10_000)).isTrue();
+    kinesisSpanProcessor.processRecords(records(checkpointer));
+
+    verify(checkpointer).checkpoint("1", 0L);
+    assertThat(storage.spanStore().getTraces()).hasSize(spans.size());
+  }
+
+  /** Retrying can't fix invalid data, so it is dropped rather than holding back the checkpoint. */
+  @Test void checkpointsPastPermanentlyFailedWrites() throws Exception {
+    StorageGate gate = new StorageGate(
+        new FailingStorage(Integer.MAX_VALUE, new IllegalArgumentException("invalid span")),
+        CollectorSampler.ALWAYS_SAMPLE, metrics, 0);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics, gate, 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+
+    verify(checkpointer).checkpoint("1", 0L);
+    assertThat(gate.storeRetries.sum()).isZero();
+    assertThat(metrics.spansDropped()).isEqualTo(spans.size());
+  }
+
+  /** Storage that stays down eventually drops writes, so records don't accumulate forever. */
+  @Test void checkpointsPastWritesFailingAfterMaxAttempts() throws Exception {
+    StorageGate gate = new StorageGate(new FailingStorage(Integer.MAX_VALUE),
+        CollectorSampler.ALWAYS_SAMPLE, metrics, 1024);
+    gate.maxAttempts = 2;
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics, gate, 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+    assertThat(kinesisSpanProcessor.awaitStored(10_000)).isTrue();
+    kinesisSpanProcessor.processRecords(records(checkpointer));
+
+    verify(checkpointer).checkpoint("1", 0L);
+    assertThat(gate.storeRetries.sum()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(spans.size());
+    assertThat(gate.inFlightBytes.availablePermits()).isEqualTo(1024);
+  }
+
+  @Test void shardEnded_checkpointsOnceStored() throws Exception {
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+
+    kinesisSpanProcessor.shardEnded(ShardEndedInput.builder().checkpointer(checkpointer).build());
+
+    verify(checkpointer).checkpoint();
+  }
+
+  @Test void shutdownRequested_checkpointsStored() throws Exception {
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+    kinesisSpanProcessor.processRecords(records(checkpointer, "1"));
+
+    kinesisSpanProcessor.shutdownRequested(
+        ShutdownRequestedInput.builder().checkpointer(checkpointer).build());
+
+    verify(checkpointer).checkpoint("1", 0L);
+  }
+
+  /**
+   * The KCL de-aggregates records packed by the Kinesis Producer Library before processing. Each
+   * user record is a read-only slice of the aggregate, sharing its sequence number.
+   */
+  @Test void kplUserRecords() throws Exception {
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 0);
+    RecordProcessorCheckpointer checkpointer = mock(RecordProcessorCheckpointer.class);
+    List<KinesisClientRecord> userRecords = new ArrayList<>();
+    for (int i = 0; i < spans.size(); i++) {
+      byte[] message = SpanBytesEncoder.PROTO3.encodeList(spans.subList(i, i + 1));
+      userRecords.add(KinesisClientRecord.builder()
+          .data(ByteBuffer.wrap(message).asReadOnlyBuffer())
+          .sequenceNumber("1")
+          .subSequenceNumber(i)
+          .aggregated(true)
+          .build());
+    }
+
+    kinesisSpanProcessor.processRecords(
+        ProcessRecordsInput.builder().records(userRecords).checkpointer(checkpointer).build());
+
+    assertThat(storage.spanStore().getTraces().size()).isEqualTo(spans.size());
+    verify(checkpointer).checkpoint("1", spans.size() - 1L);
+  }
+
+  @Test void shardMetrics() {
+    ShardMetrics shardMetrics = new ShardMetrics();
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 10_000, shardMetrics,
+        0, "zipkin");
+    kinesisSpanProcessor.initialize(InitializationInput.builder().shardId("shard-1").build());
+    assertThat(shardMetrics.leaseCount()).isEqualTo(1);
+
+    kinesisSpanProcessor.processRecords(ProcessRecordsInput.builder()
+        .records(createTestData(3).records())
+        .millisBehindLatest(1500L)
+        .build());
+
+    assertThat(shardMetrics.maxMillisBehindLatest()).isEqualTo(1500L);
+    assertThat(shardMetrics.batches.sum()).isEqualTo(1);
+    assertThat(shardMetrics.records.sum()).isEqualTo(3);
+    assertThat(shardMetrics.processingNanos.sum()).isPositive();
+
+    assertThat(shardMetrics.check(0).ok()).isTrue();
+    assertThat(shardMetrics.check(1500L).ok()).isTrue();
+    assertThat(shardMetrics.check(1000L).error())
+        .hasMessage("Shard zipkin/shard-1 is 1500ms behind latest, over 1000ms");
+
+    kinesisSpanProcessor.leaseLost(LeaseLostInput.builder().build());
+    assertThat(shardMetrics.leaseCount()).isZero();
+    assertThat(shardMetrics.maxMillisBehindLatest()).isZero();
+  }
+
+  @Test void sampledBeforeDecoding_proto3() {
+    sampledBeforeDecoding(SpanBytesEncoder.PROTO3);
+  }
+
+  @Test void sampledBeforeDecoding_json2() {
+    sampledBeforeDecoding(SpanBytesEncoder.JSON_V2);
+  }
+
+  void sampledBeforeDecoding(SpanBytesEncoder encoder) {
+    CollectorSampler sampler = CollectorSampler.create(0.5f);
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(storage, sampler, metrics, 0), 10_000);
+    List<Span> lotsOfSpans = asList(Arrays.copyOfRange(TestObjects.LOTS_OF_SPANS, 0, 20));
+    List<String> sampledTraceIds = lotsOfSpans.stream()
+        .filter(s -> sampler.isSampled(s.traceId(), false))
+        .map(Span::traceId)
+        .toList();
+    assertThat(sampledTraceIds).isNotEmpty().hasSizeLessThan(lotsOfSpans.size());
+
+    kinesisSpanProcessor.processRecords(ProcessRecordsInput.builder()
+        .records(Collections.singletonList(KinesisClientRecord.builder()
+            .data(ByteBuffer.wrap(encoder.encodeList(lotsOfSpans)))
+            .build()))
+        .build());
+
+    assertThat(storage.spanStore().getTraces().stream().flatMap(List::stream).map(Span::traceId))
+        .containsExactlyInAnyOrderElementsOf(sampledTraceIds);
+    assertThat(metrics.spans()).isEqualTo(lotsOfSpans.size());
+    assertThat(metrics.spansDropped()).isEqualTo(lotsOfSpans.size() - sampledTraceIds.size());
+  }
+
+  /** The sampler should see the trace ID the span will have once decoded. */
+  @Test void normalizesJsonTraceIds() {
+    assertThat(normalizeTraceId("463AC35C9F6413AD")).isEqualTo("463ac35c9f6413ad");
+    assertThat(normalizeTraceId("3c9f6413ad")).isEqualTo("0000003c9f6413ad");
+    assertThat(normalizeTraceId("1463ac35c9f6413ad"))
+        .isEqualTo("0000000000000001463ac35c9f6413ad");
+    assertThat(normalizeTraceId("0000000000000000463ac35c9f6413ad"))
+        .isEqualTo("463ac35c9f6413ad");
+  }
+
+  static String normalizeTraceId(String traceId) {
+    byte[] bytes = traceId.getBytes(UTF_8);
+    return RecordDecoder.normalizeTraceId(ByteBuffer.wrap(bytes), 0, bytes.length);
+  }
+
+  @Test void rateLimitedPerShard() {
+    ShardMetrics shardMetrics = new ShardMetrics();
+    int recordSize = SpanBytesEncoder.PROTO3.encodeList(spans).length;
+    kinesisSpanProcessor = new KinesisSpanProcessor(metrics,
+        new StorageGate(storage, CollectorSampler.ALWAYS_SAMPLE, metrics, 0), 10_000, shardMetrics,
+        recordSize, "zipkin");
+
+    kinesisSpanProcessor.processRecords(
+        records(mock(RecordProcessorCheckpointer.class), "1", "2", "3"));
+
+    assertThat(metrics.messages()).isEqualTo(3);
+    assertThat(metrics.messagesDropped()).isEqualTo(2);
+    assertThat(shardMetrics.rateLimited.sum()).isEqualTo(2);
+    assertThat(storage.spanStore().getTraces()).hasSize(spans.size());
+  }
+
+  ProcessRecordsInput records(RecordProcessorCheckpointer checkpointer, String... sequenceNumbers) {
+    List<KinesisClientRecord> records = new ArrayList<>();
+    for (String sequenceNumber : sequenceNumbers) {
+      records.add(KinesisClientRecord.builder()
+          .data(ByteBuffer.wrap(SpanBytesEncoder.PROTO3.encodeList(spans)))
+          .sequenceNumber(sequenceNumber)
+          .build());
+    }
+    return ProcessRecordsInput.builder().records(records).checkpointer(checkpointer).build();
+  }
+
+  /** Fails writes with {@link #error} until {@link #failuresLeft} is exhausted */
+  final class FailingStorage extends ForwardingStorageComponent {
+    final AtomicInteger failuresLeft;
+    final RuntimeException error;
+
+    FailingStorage(int failures) {
+      this(failures, new IllegalStateException("storage is down"));
+    }
+
+    FailingStorage(int failures, RuntimeException error) {
+      this.failuresLeft = new AtomicInteger(failures);
+      this.error = error;
+    }
+
+    @Override protected StorageComponent delegate() {
+      return storage;
+    }
+
+    @Override public SpanConsumer spanConsumer() {
+      return list -> {
+        if (failuresLeft.getAndUpdate(i -> Math.max(0, i - 1)) > 0) throw error;
+        return storage.spanConsumer().accept(list);
+      };
+    }
+  }
+
+  /** Holds writes until {@link #complete()} */
+  final class DeferredStorage extends ForwardingStorageComponent {
+    final List<Callback<Void>> callbacks = new ArrayList<>();
+
+    @Override protected StorageComponent delegate() {
+      return storage;
+    }
+
+    @Override public SpanConsumer spanConsumer() {
+      return list -> new Call.Base<Void>() {
+        @Override protected Void doExecute() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override protected void doEnqueue(Callback<Void> callback) {
+          callbacks.add(callback);
+        }
+
+        @Override public Call<Void> clone() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    void complete() {
+      for (Callback<Void> callback : callbacks) callback.onSuccess(null);
+      callbacks.clear();
+    }
+  }
+
   private ProcessRecordsInput createTestData(int count) {
     List<KinesisClientRecord> records = new ArrayList<>();
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared by all processors so that, once receives consistently fail, they stop retrying
+ * independently. While open, a single processor probes SQS after a jittered delay, and the others
+ * wait for its outcome instead of retrying in a burst.
+ */
+final class CircuitBreaker {
+  static final int FAILURE_THRESHOLD = 5;
+  static final long OPEN_MILLIS = 1000;
+
+  final AtomicInteger failures = new AtomicInteger();
+  final AtomicLong retryAtNanos = new AtomicLong();
+  volatile boolean open;
+
+  /** Returns how long to wait before receiving, or zero if the caller may proceed. */
+  long delayNanos() {
+    if (!open) return 0L;
+    long now = System.nanoTime(), retryAt = retryAtNanos.get();
+    if (retryAt - now > 0) return retryAt - now;
+    // Half-open: whoever advances the deadline probes. If the probe never completes, such as when
+    // its processor is retired, another caller probes after the deadline.
+    if (retryAtNanos.compareAndSet(retryAt, now + openNanos())) return 0L;
+    return Math.max(0L, retryAtNanos.get() - now);
+  }
+
+  void onSuccess() {
+    if (failures.get() != 0) failures.set(0);
+    open = false;
+  }
+
+  void onFailure() {
+    if (failures.incrementAndGet() < FAILURE_THRESHOLD) return;
+    retryAtNanos.set(System.nanoTime() + openNanos());
+    open = true;
+  }
+
+  /** Jittered between half and the full open time, so processors across hosts desynchronize. */
+  static long openNanos() {
+    long millis = ThreadLocalRandom.current().nextLong(OPEN_MILLIS / 2, OPEN_MILLIS + 1);
+    return millis * 1_000_000L;
+  }
+}
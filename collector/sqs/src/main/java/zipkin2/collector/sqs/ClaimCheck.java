@@ -0,0 +1,164 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+/**
+ * Resolves messages that senders offloaded to S3 because they were too large for SQS. These
+ * messages are a pointer in the format of the Amazon SQS Extended Client, for example:
+ * <pre>{@code
+ * ["software.amazon.payloadoffloading.PayloadS3Pointer",{"s3BucketName":"b","s3Key":"k"}]
+ * }</pre>
+ *
+ * <p>The S3 client is only created once a pointer is received. Objects are decoded as they are
+ * streamed, into a buffer of their own, as they are usually much larger than messages.
+ */
+final class ClaimCheck {
+  static final String POINTER_PREFIX = "[\"software.amazon.payloadoffloading.PayloadS3Pointer\"";
+  static final Pattern BUCKET = Pattern.compile("\"s3BucketName\"\\s*:\\s*\"([^\"]+)\"");
+  static final Pattern KEY = Pattern.compile("\"s3Key\"\\s*:\\s*\"([^\"]+)\"");
+
+  static boolean isPointer(String body) {
+    return body.startsWith(POINTER_PREFIX);
+  }
+
+  final AwsCredentialsProvider credentialsProvider;
+  final URI endpointOverride;
+  final String region;
+  volatile S3Client client;
+
+  ClaimCheck(SQSCollector.Builder builder) {
+    this.credentialsProvider = builder.credentialsProvider;
+    this.endpointOverride = builder.s3EndpointOverride;
+    this.region = builder.region;
+  }
+
+  /**
+   * Returns the encoded spans the pointer refers to.
+   *
+   * @throws IllegalArgumentException if the pointer or the object it refers to is malformed
+   * @throws software.amazon.awssdk.core.exception.SdkException if the object couldn't be read
+   */
+  ByteBuffer resolve(String pointer) {
+    String bucket = group(BUCKET, pointer), key = group(KEY, pointer);
+    try (InputStream object =
+             new ReadFailures(client().getObject(b -> b.bucket(bucket).key(key)))) {
+      return ByteBuffer.wrap(decode(object));
+    } catch (IOException e) { // read failures are thrown as SdkClientException
+      throw new IllegalArgumentException("malformed object s3://" + bucket + "/" + key, e);
+    }
+  }
+
+  /**
+   * The object is the message body that was too large to send: json is read as is, and anything
+   * else is base64, gzipped when the sender compressed it, the same as a message.
+   */
+  static byte[] decode(InputStream object) throws IOException {
+    PushbackInputStream in = new PushbackInputStream(object, 1);
+    int first = in.read();
+    if (first == -1) throw new IllegalArgumentException("empty object");
+    in.unread(first);
+    if (first == '[') return readAll(in);
+
+    PushbackInputStream decoded = new PushbackInputStream(Base64.getDecoder().wrap(in), 2);
+    byte[] magic = decoded.readNBytes(2);
+    decoded.unread(magic);
+    boolean gzip = magic.length == 2
+        && ((magic[0] & 0xff) | (magic[1] & 0xff) << 8) == MessageBodyDecoder.GZIP_MAGIC;
+    return readAll(gzip ? new GZIPInputStream(decoded) : decoded);
+  }
+
+  static byte[] readAll(InputStream in) throws IOException {
+    byte[] result = in.readNBytes(MessageBodyDecoder.MAX_INFLATED_BYTES + 1);
+    if (result.length > MessageBodyDecoder.MAX_INFLATED_BYTES) {
+      throw new IllegalArgumentException(
+          "object decodes past " + MessageBodyDecoder.MAX_INFLATED_BYTES);
+    }
+    return result;
+  }
+
+  /**
+   * Separates failures reading the object, which are worth retrying, from decoding failures. The
+   * decoding streams wrapping this throw {@link IOException} when content is malformed.
+   */
+  static final class ReadFailures extends FilterInputStream {
+    ReadFailures(InputStream in) {
+      super(in);
+    }
+
+    @Override public int read() {
+      try {
+        return in.read();
+      } catch (IOException e) {
+        throw SdkClientException.create("reading object failed", e);
+      }
+    }
+
+    @Override public int read(byte[] b, int off, int len) {
+      try {
+        return in.read(b, off, len);
+      } catch (IOException e) {
+        throw SdkClientException.create("reading object failed", e);
+      }
+    }
+
+    @Override public void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw SdkClientException.create("closing object failed", e);
+      }
+    }
+  }
+
+  static String group(Pattern pattern, String pointer) {
+    Matcher matcher = pattern.matcher(pointer);
+    if (!matcher.find()) {
+      throw new IllegalArgumentException("malformed S3 pointer: " + pointer);
+    }
+    return matcher.group(1);
+  }
+
+  S3Client client() {
+    if (client == null) {
+      synchronized (this) {
+        if (client == null) {
+          S3ClientBuilder builder = S3Client.builder()
+              .httpClient(UrlConnectionHttpClient.create())
+              .credentialsProvider(credentialsProvider);
+          // Endpoint overrides, such as for LocalStack, don't usually resolve bucket subdomains
+          if (endpointOverride != null) {
+            builder.endpointOverride(endpointOverride).forcePathStyle(true);
+          }
+          if (region != null) builder.region(Region.of(region));
+          client = builder.build();
+        }
+      }
+    }
+    return client;
+  }
+
+  void close() {
+    S3Client maybeClient = client;
+    if (maybeClient == null) return;
+    maybeClient.close();
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+
+/**
+ * Coalesces message deletes from all processors into full {@code DeleteMessageBatch} calls, which
+ * are sent asynchronously so that they never hold up a receive.
+ *
+ * <p>Partial batches are sent after {@link #LINGER_MILLIS}. Only entries that failed are retried,
+ * and entries failed due to the request itself, such as an expired receipt handle, are not. Any
+ * message not deleted becomes visible again, so failures here only result in re-processing.
+ */
+final class DeleteBatcher {
+  static final Logger logger = Logger.getLogger(DeleteBatcher.class.getName());
+  static final int MAX_BATCH_SIZE = 10; // SQS limit for a batch request
+  static final long LINGER_MILLIS = 100;
+  static final int MAX_ATTEMPTS = 3;
+
+  final ScheduledExecutorService scheduler;
+  final AtomicBoolean closed;
+  // Sends a request with the async client, or the blocking one on another thread
+  final Function<DeleteMessageBatchRequest, CompletableFuture<DeleteMessageBatchResponse>>
+      deleteMessageBatch;
+  // Receipt handles per queue URL waiting to fill a batch
+  final Map<String, List<String>> pending = new LinkedHashMap<>();
+  final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+  final LongAdder requests = new LongAdder(), failures = new LongAdder();
+  final LongAdder latencyNanos = new LongAdder();
+
+  DeleteBatcher(ScheduledExecutorService scheduler, AtomicBoolean closed,
+      Function<DeleteMessageBatchRequest, CompletableFuture<DeleteMessageBatchResponse>>
+          deleteMessageBatch) {
+    this.scheduler = scheduler;
+    this.closed = closed;
+    this.deleteMessageBatch = deleteMessageBatch;
+  }
+
+  void start() {
+    scheduler.scheduleWithFixedDelay(this::flush, LINGER_MILLIS, LINGER_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Deletes the message once a batch fills or the linger time elapses. */
+  void add(String queueUrl, String receiptHandle) {
+    List<String> batch;
+    synchronized (this) {
+      List<String> receiptHandles = pending.computeIfAbsent(queueUrl, k -> new ArrayList<>());
+      receiptHandles.add(receiptHandle);
+      if (receiptHandles.size() < MAX_BATCH_SIZE) return;
+      batch = new ArrayList<>(receiptHandles);
+      receiptHandles.clear();
+    }
+    send(queueUrl, batch, 1);
+  }
+
+  /** Sends any partial batches. */
+  void flush() {
+    Map<String, List<String>> batches = new LinkedHashMap<>();
+    synchronized (this) {
+      for (Map.Entry<String, List<String>> entry : pending.entrySet()) {
+        if (entry.getValue().isEmpty()) continue;
+        batches.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        entry.getValue().clear();
+      }
+    }
+    batches.forEach((queueUrl, receiptHandles) -> send(queueUrl, receiptHandles, 1));
+  }
+
+  /** Flushes, then waits up to the timeout for outstanding deletes to complete. */
+  void close(long timeout, TimeUnit unit) {
+    flush();
+    try {
+      CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]))
+          .get(timeout, unit);
+    } catch (Exception e) {
+      // any messages not deleted become visible again
+    }
+  }
+
+  void send(String queueUrl, List<String> receiptHandles, int attempt) {
+    List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(receiptHandles.size());
+    for (int i = 0; i < receiptHandles.size(); i++) {
+      entries.add(DeleteMessageBatchRequestEntry.builder()
+          .id(String.valueOf(i))
+          .receiptHandle(receiptHandles.get(i))
+          .build());
+    }
+    DeleteMessageBatchRequest request = DeleteMessageBatchRequest.builder()
+        .queueUrl(queueUrl)
+        .entries(entries)
+        .build();
+
+    long start = System.nanoTime();
+    CompletableFuture<DeleteMessageBatchResponse> result;
+    try {
+      result = deleteMessageBatch.apply(request);
+    } catch (RuntimeException e) { // such as rejected execution after close
+      failures.add(receiptHandles.size());
+      logger.log(Level.FINE, "sqs delete not sent", e);
+      return;
+    }
+    inFlight.add(result);
+    result.whenComplete((response, error) -> {
+      inFlight.remove(result);
+      requests.increment();
+      latencyNanos.add(System.nanoTime() - start);
+      if (error != null) {
+        failures.add(receiptHandles.size());
+        retry(queueUrl, receiptHandles, attempt, error);
+        return;
+      }
+      if (response.failed().isEmpty()) return;
+
+      List<String> retryable = new ArrayList<>();
+      for (BatchResultErrorEntry failed : response.failed()) {
+        failures.increment();
+        if (Boolean.TRUE.equals(failed.senderFault())) {
+          logger.fine(() -> "sqs delete failed: " + failed.code() + " " + failed.message());
+        } else {
+          retryable.add(receiptHandles.get(Integer.parseInt(failed.id())));
+        }
+      }
+      if (!retryable.isEmpty()) {
+        retry(queueUrl, retryable, attempt, null);
+      }
+    });
+  }
+
+  void retry(String queueUrl, List<String> receiptHandles, int attempt, Throwable error) {
+    if (attempt >= MAX_ATTEMPTS || closed.get()) {
+      logger.log(Level.WARNING,
+          "sqs delete of " + receiptHandles.size() + " messages failed after " + attempt
+              + " attempts; they will be re-processed once visible", error);
+      return;
+    }
+    try {
+      scheduler.schedule(() -> send(queueUrl, receiptHandles, attempt + 1),
+          LINGER_MILLIS * attempt, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      // scheduler is shutdown, so the collector is closing
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes SQS message bodies into encoded span bytes without allocating a copy per message.
+ *
+ * <p>The SDK has already materialized the body as a {@linkplain String}, so this decodes directly
+ * from its characters into a buffer reused by the current thread. Plain-text json is written as
+ * UTF-8, and anything else is treated as standard base64.
+ *
+ * <p>Base64 content starting with the gzip magic number is inflated into a second reused buffer.
+ * This is how senders compress messages, and it can't be confused with a list of spans, as no span
+ * encoding starts with byte {@code 0x1f}.
+ *
+ * <p>Buffers are only reused up to {@link #MAX_RETAINED_BYTES}. Larger results use a buffer of
+ * their own, which is garbage once decoded, so that each thread doesn't hold on to the largest
+ * message it ever saw.
+ */
+final class MessageBodyDecoder {
+  static final int INITIAL_CAPACITY = 16 * 1024;
+  // The SQS limit for a message, so larger results are only for compressed messages
+  static final int MAX_RETAINED_BYTES = 256 * 1024;
+  // Guards against decompression bombs: far larger than any reasonable list of spans.
+  static final int MAX_INFLATED_BYTES = 64 * 1024 * 1024;
+  static final int GZIP_MAGIC = 0x8b1f;
+  static final byte[] BASE64 = new byte[128];
+
+  static {
+    Arrays.fill(BASE64, (byte) -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) BASE64[alphabet.charAt(i)] = (byte) i;
+  }
+
+  static final ThreadLocal<MessageBodyDecoder> CURRENT =
+      ThreadLocal.withInitial(MessageBodyDecoder::new);
+
+  static MessageBodyDecoder get() {
+    return CURRENT.get();
+  }
+
+  final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  byte[] buffer = new byte[INITIAL_CAPACITY];
+  ByteBuffer view = ByteBuffer.wrap(buffer);
+  byte[] inflated; // allocated on the first compressed message
+  final Inflater inflater = new Inflater(true); // gzip framing is parsed here
+  final CRC32 crc = new CRC32();
+
+  /**
+   * Returns the encoded spans in the body. The result is only valid until the next call on this
+   * thread, so it must be fully decoded before then.
+   *
+   * @throws IllegalArgumentException if the body is neither json nor valid base64
+   */
+  ByteBuffer decode(String body) {
+    // allow plain-text json, but permit base64 encoded thrift or json
+    if (body.charAt(0) == '[') return encodeUtf8(body);
+    ByteBuffer decoded = decodeBase64(body);
+    return isGzip(decoded) ? gunzip(decoded) : decoded;
+  }
+
+  static boolean isGzip(ByteBuffer decoded) {
+    return decoded.remaining() >= 2
+        && ((decoded.get(0) & 0xff) | (decoded.get(1) & 0xff) << 8) == GZIP_MAGIC;
+  }
+
+  /** Inflates a gzip member, skipping its header and verifying its trailer. */
+  ByteBuffer gunzip(ByteBuffer compressed) {
+    byte[] in = compressed.array();
+    int length = compressed.remaining();
+    if (length < 10 || in[2] != 8) throw new IllegalArgumentException("unsupported gzip header");
+    int flags = in[3], offset = 10;
+    if ((flags & 4) != 0) { // FEXTRA
+      if (offset + 2 > length) throw new IllegalArgumentException("truncated gzip header");
+      offset += 2 + ((in[offset] & 0xff) | (in[offset + 1] & 0xff) << 8);
+    }
+    if ((flags & 8) != 0) offset = skipZeroTerminated(in, offset, length); // FNAME
+    if ((flags & 16) != 0) offset = skipZeroTerminated(in, offset, length); // FCOMMENT
+    if ((flags & 2) != 0) offset += 2; // FHCRC
+    if (offset > length) throw new IllegalArgumentException("truncated gzip header");
+
+    int capacity = (int) Math.min(MAX_INFLATED_BYTES, Math.max(INITIAL_CAPACITY, length * 4L));
+    byte[] out = inflated;
+    if (out == null || out.length < capacity) out = retainInflated(new byte[capacity]);
+    inflater.reset();
+    inflater.setInput(in, offset, length - offset);
+    int size = 0;
+    try {
+      while (!inflater.finished()) {
+        if (size == out.length) {
+          if (size >= MAX_INFLATED_BYTES) {
+            throw new IllegalArgumentException("gzip message inflates past " + MAX_INFLATED_BYTES);
+          }
+          out = retainInflated(Arrays.copyOf(out, Math.min(size * 2, MAX_INFLATED_BYTES)));
+        }
+        int count = inflater.inflate(out, size, out.length - size);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalArgumentException("truncated gzip message");
+        }
+        size += count;
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("malformed gzip message", e);
+    }
+    verifyTrailer(in, length - inflater.getRemaining(), length, out, size);
+    return ByteBuffer.wrap(out, 0, size);
+  }
+
+  /** Reuses the buffer for the next message unless it is larger than retained per thread. */
+  byte[] retainInflated(byte[] out) {
+    if (out.length <= MAX_RETAINED_BYTES) inflated = out;
+    return out;
+  }
+
+  /** Checks the CRC32 and the size mod 2^32 that follow the deflated data. */
+  void verifyTrailer(byte[] in, int offset, int length, byte[] out, int size) {
+    if (length - offset < 8) throw new IllegalArgumentException("truncated gzip message");
+    crc.reset();
+    crc.update(out, 0, size);
+    if (readInt(in, offset) != (int) crc.getValue()) {
+      throw new IllegalArgumentException("gzip message failed its CRC32 check");
+    }
+    if (readInt(in, offset + 4) != size) {
+      throw new IllegalArgumentException("gzip message inflated to the wrong size");
+    }
+  }
+
+  static int readInt(byte[] in, int offset) { // little endian
+    return (in[offset] & 0xff) | (in[offset + 1] & 0xff) << 8
+        | (in[offset + 2] & 0xff) << 16 | (in[offset + 3] & 0xff) << 24;
+  }
+
+  static int skipZeroTerminated(byte[] in, int offset, int length) {
+    while (offset < length && in[offset] != 0) offset++;
+    return offset + 1;
+  }
+
+  ByteBuffer encodeUtf8(String body) {
+    int length = body.length();
+    byte[] out = buffer(length);
+    int i = 0;
+    for (; i < length; i++) { // json from our senders is ascii unless it has unicode tags
+      char c = body.charAt(i);
+      if (c >= 0x80) break;
+      out[i] = (byte) c;
+    }
+    if (i == length) return view(out, length);
+
+    // Each remaining char encodes to at most 3 bytes, as surrogate pairs encode to 4.
+    byte[] grown = buffer(i + (length - i) * 3);
+    if (grown != out) System.arraycopy(out, 0, grown, 0, i);
+    out = grown;
+    ByteBuffer remaining = ByteBuffer.wrap(out, i, out.length - i);
+    utf8.reset();
+    CoderResult result = utf8.encode(CharBuffer.wrap(body, i, length), remaining, true);
+    if (result.isUnderflow()) result = utf8.flush(remaining);
+    if (!result.isUnderflow()) throw new IllegalArgumentException("couldn't encode body as UTF-8");
+    return view(out, remaining.position());
+  }
+
+  ByteBuffer decodeBase64(String body) {
+    int length = body.length();
+    // Padding is accepted, but not required, as with java.util.Base64.getDecoder()
+    if (length > 0 && body.charAt(length - 1) == '=') length--;
+    if (length > 0 && body.charAt(length - 1) == '=') length--;
+    int remainder = length % 4;
+    if (remainder == 1) throw new IllegalArgumentException("truncated base64 input");
+
+    byte[] out = buffer(length / 4 * 3 + Math.max(0, remainder - 1));
+    int o = 0, i = 0;
+    for (int end = length - remainder; i < end; i += 4) {
+      int bits = sextet(body, i) << 18 | sextet(body, i + 1) << 12
+          | sextet(body, i + 2) << 6 | sextet(body, i + 3);
+      out[o++] = (byte) (bits >> 16);
+      out[o++] = (byte) (bits >> 8);
+      out[o++] = (byte) bits;
+    }
+    if (remainder > 1) {
+      int bits = sextet(body, i) << 18 | sextet(body, i + 1) << 12;
+      if (remainder == 3) bits |= sextet(body, i + 2) << 6;
+      out[o++] = (byte) (bits >> 16);
+      if (remainder == 3) out[o++] = (byte) (bits >> 8);
+    }
+    return view(out, o);
+  }
+
+  static int sextet(String body, int index) {
+    char c = body.charAt(index);
+    int value = c < 128 ? BASE64[c] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException(
+          "Illegal base64 character " + Integer.toString(c, 16) + " at " + index);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the reused buffer, grown if needed, or a new one when the capacity is larger than
+   * retained per thread. Contents aren't copied.
+   */
+  byte[] buffer(int capacity) {
+    if (buffer.length >= capacity) return buffer;
+    if (capacity > MAX_RETAINED_BYTES) return new byte[capacity];
+    buffer = new byte[Math.min(MAX_RETAINED_BYTES, Math.max(capacity, buffer.length * 2))];
+    view = ByteBuffer.wrap(buffer);
+    return buffer;
+  }
+
+  ByteBuffer view(byte[] out, int length) {
+    if (out != buffer) return ByteBuffer.wrap(out, 0, length);
+    view.clear().limit(length);
+    return view;
+  }
+}
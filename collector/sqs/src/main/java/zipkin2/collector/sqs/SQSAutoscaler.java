@@ -0,0 +1,142 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+/**
+ * Periodically adjusts the count of {@link SQSSpanProcessor processors} between the configured
+ * parallelism and max parallelism.
+ *
+ * <p>Processors are added when the approximate backlog can't be drained within the target drain
+ * time at the receive rate observed per processor. Processors are retired one at a time when most
+ * receives come back empty, as those long polls cost API calls without collecting anything.
+ *
+ * <p>This runs on the collector's scheduler, which also flushes deletes and extends visibility
+ * timeouts, so it never blocks on the queue attributes. They complete on the async client, or on
+ * a dedicated thread with the blocking client.
+ */
+final class SQSAutoscaler implements Runnable {
+  static final Logger logger = Logger.getLogger(SQSAutoscaler.class.getName());
+  static final long INTERVAL_SECONDS = 10;
+  // Above this ratio of empty receives, processors are mostly idle.
+  static final double IDLE_RATIO = 0.5;
+
+  final SQSCollector collector;
+  final Executor blockingExecutor; // null when using the async client
+  final List<GetQueueAttributesRequest> requests = new ArrayList<>();
+  // Skips an interval while the previous one awaits the queue attributes
+  final AtomicBoolean running = new AtomicBoolean();
+  long lastReceives, lastEmptyReceives, lastReceivedMessages; // guarded by running
+
+  SQSAutoscaler(SQSCollector collector) {
+    this.collector = collector;
+    this.blockingExecutor = collector.autoscalerPool;
+    for (WeightedQueues.Queue queue : collector.queues.queues) {
+      requests.add(GetQueueAttributesRequest.builder()
+          .queueUrl(queue.url)
+          .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
+          .build());
+    }
+  }
+
+  @Override public void run() {
+    if (!running.compareAndSet(false, true)) return;
+    try {
+      approximateBacklog().whenComplete((backlog, error) -> {
+        try {
+          if (error != null) {
+            // keep the current processors on failure; the next interval will try again
+            logger.log(Level.FINE, "sqs autoscaling failed", error);
+          } else {
+            scale(backlog);
+          }
+        } finally {
+          running.set(false);
+        }
+      });
+    } catch (RuntimeException e) { // such as rejected execution after close
+      running.set(false);
+      logger.log(Level.FINE, "sqs autoscaling failed", e);
+    }
+  }
+
+  void scale(long backlog) {
+    if (collector.closed.get()) return;
+    try {
+      long receives = collector.receives.sum(), emptyReceives = collector.emptyReceives.sum();
+      long receivedMessages = collector.receivedMessages.sum();
+      long deltaReceives = receives - lastReceives;
+      long deltaEmpty = emptyReceives - lastEmptyReceives;
+      long deltaMessages = receivedMessages - lastReceivedMessages;
+      lastReceives = receives;
+      lastEmptyReceives = emptyReceives;
+      lastReceivedMessages = receivedMessages;
+
+      int current = collector.processors.size();
+      int desired = desiredParallelism(current, backlog, deltaReceives, deltaEmpty, deltaMessages);
+      if (desired == current) return;
+
+      logger.fine(() -> "scaling sqs processors from " + current + " to " + desired
+          + " for approximate backlog " + backlog);
+      for (int i = current; i < desired; i++) collector.addProcessor();
+      for (int i = desired; i < current; i++) collector.retireProcessor();
+    } catch (RuntimeException e) {
+      // keep the current processors on failure; the next interval will try again
+      logger.log(Level.FINE, "sqs autoscaling failed", e);
+    }
+  }
+
+  /** Completes with the approximate count of messages across all queues. */
+  CompletableFuture<Long> approximateBacklog() {
+    if (blockingExecutor != null) {
+      return CompletableFuture.supplyAsync(() -> {
+        long backlog = 0L;
+        for (GetQueueAttributesRequest request : requests) {
+          backlog += messageCount(collector.client().getQueueAttributes(request));
+        }
+        return backlog;
+      }, blockingExecutor);
+    }
+    CompletableFuture<Long> backlog = CompletableFuture.completedFuture(0L);
+    for (GetQueueAttributesRequest request : requests) {
+      backlog = backlog.thenCombine(collector.asyncClient().getQueueAttributes(request),
+          (sum, response) -> sum + messageCount(response));
+    }
+    return backlog;
+  }
+
+  static long messageCount(GetQueueAttributesResponse response) {
+    Map<QueueAttributeName, String> attributes = response.attributes();
+    String count = attributes.get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES);
+    return count != null ? Long.parseLong(count) : 0L;
+  }
+
+  int desiredParallelism(int current, long backlog, long receives, long emptyReceives,
+      long receivedMessages) {
+    int min = collector.parallelism, max = collector.maxParallelism;
+    int desired = current;
+    if (receives > 0 && (double) emptyReceives / receives > IDLE_RATIO) {
+      desired = current - 1; // retire gradually to avoid oscillation
+    } else if (backlog > 0) {
+      // messages per second a single processor drained during the last interval
+      double rate = (double) receivedMessages / INTERVAL_SECONDS / Math.max(1, current);
+      desired = rate > 0
+          ? (int) Math.ceil(backlog / (rate * collector.targetDrainSeconds))
+          : current + 1;
+    }
+    return Math.max(min, Math.min(max, desired));
+  }
+}
@@ -4,28 +4,45 @@
  */
 package zipkin2.collector.sqs;
 
+import java.lang.reflect.Method;
 import java.net.URI;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.SqsClientBuilder;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import zipkin2.CheckResult;
-import zipkin2.collector.Collector;
 import zipkin2.collector.CollectorComponent;
 import zipkin2.collector.CollectorMetrics;
 import zipkin2.collector.CollectorSampler;
+import zipkin2.collector.aws.internal.SpanWriter;
 import zipkin2.storage.StorageComponent;
 
 public final class SQSCollector extends CollectorComponent {
+  static final Logger logger = Logger.getLogger(SQSCollector.class.getName());
+  static final int DELETE_THREADS = 2;
 
   public static Builder newBuilder() {
     return new Builder();
@@ -33,39 +50,71 @@ public final class SQSCollector extends CollectorComponent {
 
   public static final class Builder extends CollectorComponent.Builder {
 
-    Collector.Builder delegate = Collector.newBuilder(SQSCollector.class);
     CollectorMetrics metrics = CollectorMetrics.NOOP_METRICS;
 
-    String queueUrl;
+    // Queue URLs to their weight, in the order added
+    Map<String, Integer> queueWeights = new LinkedHashMap<>();
     int waitTimeSeconds = 20; // aws sqs max wait time is 20 seconds
     int maxNumberOfMessages = 10; // aws sqs max messages for a receive call is 10
-    URI endpointOverride;
+    URI endpointOverride, s3EndpointOverride;
     String region = "us-east-1";
     AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
     int parallelism = 1;
+    boolean pipelined;
+    boolean asyncClient;
+    int maxInFlightMessages;
+    boolean awaitStorage;
+    int visibilityTimeoutSeconds;
+    int maxVisibilityExtensionSeconds = 600;
+    StorageComponent storage;
+    CollectorSampler sampler = CollectorSampler.ALWAYS_SAMPLE;
+    boolean virtualThreads;
+    int maxParallelism;
+    int targetDrainSeconds = 60;
+    int maxBatchSpans;
+    int batchLingerMillis;
 
     @Override
     public Builder storage(StorageComponent storageComponent) {
-      delegate.storage(storageComponent);
+      if (storageComponent == null) throw new NullPointerException("storage == null");
+      this.storage = storageComponent;
       return this;
     }
 
     @Override
     public Builder metrics(CollectorMetrics metrics) {
       if (metrics == null) throw new NullPointerException("metrics == null");
-      delegate.metrics(this.metrics = metrics.forTransport("sqs"));
+      this.metrics = metrics.forTransport("sqs");
       return this;
     }
 
     @Override
     public Builder sampler(CollectorSampler sampler) {
-      delegate.sampler(sampler);
+      if (sampler == null) throw new NullPointerException("sampler == null");
+      this.sampler = sampler;
       return this;
     }
 
-    /** SQS queue URL to consume from */
+    /** SQS queue URL to consume from. This replaces any queue URLs added previously. */
     public Builder queueUrl(String queueUrl) {
-      this.queueUrl = queueUrl;
+      queueWeights.clear();
+      queueWeights.put(queueUrl, 1);
+      return this;
+    }
+
+    /**
+     * Adds a queue to consume from, sharing the client and processors of this collector with other
+     * queues. Processors receive from each queue in proportion to its weight, except that a queue
+     * which was last empty is polled by only one processor at a time, leaving the others to busy
+     * queues.
+     *
+     * @param queueUrl SQS queue URL to consume from
+     * @param weight relative share of receives while the queue has messages
+     */
+    public Builder addQueueUrl(String queueUrl, int weight) {
+      if (queueUrl == null) throw new NullPointerException("queueUrl == null");
+      if (weight < 1) throw new IllegalArgumentException("weight must be positive");
+      queueWeights.put(queueUrl, weight);
       return this;
     }
 
@@ -75,13 +124,22 @@ public final class SQSCollector extends CollectorComponent {
       return this;
     }
 
-    /** AWS region for SQS. */
+    /**
+     * Endpoint override for S3, where senders offload messages too large for SQS. This also
+     * enables path-style requests.
+     */
+    public Builder s3EndpointOverride(URI s3EndpointOverride) {
+      this.s3EndpointOverride = s3EndpointOverride;
+      return this;
+    }
+
+    /** AWS region for SQS and S3. */
     public Builder region(String region) {
       this.region = region;
       return this;
     }
 
-    /** AWS credentials for authenticating calls to SQS. */
+    /** AWS credentials for authenticating calls to SQS and S3. */
     public Builder credentialsProvider(AwsCredentialsProvider credentialsProvider) {
       this.credentialsProvider = credentialsProvider;
       return this;
@@ -105,13 +163,162 @@ public final class SQSCollector extends CollectorComponent {
       return this;
     }
 
-    /** How many processors to run in parallel for each queue URL */
+    /** How many processors to run in parallel in total, across all queue URLs */
     public Builder parallelism(int parallelism) {
       if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
       this.parallelism = parallelism;
       return this;
     }
 
+    /**
+     * When greater than {@link #parallelism(int) parallelism}, processors are added or retired
+     * based on queue depth, between parallelism and this value. Zero disables autoscaling, which
+     * is the default.
+     *
+     * @see #targetDrainSeconds(int)
+     */
+    public Builder maxParallelism(int maxParallelism) {
+      if (maxParallelism < 0) throw new IllegalArgumentException("maxParallelism < 0");
+      this.maxParallelism = maxParallelism;
+      return this;
+    }
+
+    /**
+     * When autoscaling, processors are added until the approximate backlog of the queue can be
+     * drained within this many seconds at the observed per-processor receive rate. Defaults to 60.
+     */
+    public Builder targetDrainSeconds(int targetDrainSeconds) {
+      if (targetDrainSeconds < 1) {
+        throw new IllegalArgumentException("targetDrainSeconds must be positive");
+      }
+      this.targetDrainSeconds = targetDrainSeconds;
+      return this;
+    }
+
+    /**
+     * When true, each processor issues its next receive while the prior batch is being stored, and
+     * deletes are sent on a separate thread. This overlaps long-poll and storage latency, so fewer
+     * processors are needed to keep up with a deep queue. Defaults to false.
+     */
+    public Builder pipelined(boolean pipelined) {
+      this.pipelined = pipelined;
+      return this;
+    }
+
+    /**
+     * When true, messages are received with a non-blocking {@link SqsAsyncClient}. Each unit of
+     * {@link #parallelism(int) parallelism} is then an outstanding long poll instead of a thread,
+     * so many concurrent receives can share a few event loop threads. Received messages are
+     * decoded and stored on a pool of one thread per unit of parallelism, as this can block.
+     * Defaults to false.
+     */
+    public Builder asyncClient(boolean asyncClient) {
+      this.asyncClient = asyncClient;
+      return this;
+    }
+
+    /**
+     * Limits how many received messages can be awaiting storage at the same time. Processors do
+     * not receive more until enough messages are written to storage, which leaves the rest in the
+     * queue for other collectors. Zero means no limit, which is the default.
+     *
+     * <p>A limit implies {@link #awaitStorage(boolean)}, as otherwise a message would stop
+     * counting against it once its write is enqueued, while storage is still backed up.
+     */
+    public Builder maxInFlightMessages(int maxInFlightMessages) {
+      if (maxInFlightMessages < 0) {
+        throw new IllegalArgumentException("maxInFlightMessages must not be negative");
+      }
+      this.maxInFlightMessages = maxInFlightMessages;
+      return this;
+    }
+
+    /**
+     * When true, a message is only deleted once its spans are written to storage, instead of once
+     * the write is enqueued. Each message is deleted independently as its write completes, so a
+     * slow write doesn't hold up others, and a failed write leaves its message to be received
+     * again after the visibility timeout. Defaults to false, unless {@link
+     * #maxInFlightMessages(int)} is set.
+     *
+     * <p>Use with {@link #maxInFlightMessages(int)} to bound how many writes can be outstanding.
+     */
+    public Builder awaitStorage(boolean awaitStorage) {
+      this.awaitStorage = awaitStorage;
+      return this;
+    }
+
+    /**
+     * When positive, messages are received with this visibility timeout, and a heartbeat extends
+     * it every half timeout until their spans are stored. This prevents slow storage from causing
+     * messages to be delivered again, and so stored twice. When set, messages whose storage failed
+     * are made visible again immediately instead of after the timeout. Zero uses the queue's
+     * visibility timeout without extending it, which is the default.
+     *
+     * <p>This is most effective with {@link #awaitStorage(boolean)}, as otherwise storage is
+     * considered complete once the write is enqueued.
+     */
+    public Builder visibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+      if (visibilityTimeoutSeconds < 0 || visibilityTimeoutSeconds > 43200) {
+        throw new IllegalArgumentException("visibilityTimeoutSeconds must be between 0 and 43200");
+      }
+      this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+      return this;
+    }
+
+    /**
+     * When extending visibility timeouts, how long a message awaiting storage is kept from other
+     * consumers. Afterward, it is made visible again, so that storage which is stuck doesn't hold
+     * messages indefinitely. Defaults to 600.
+     *
+     * @see #visibilityTimeoutSeconds(int)
+     */
+    public Builder maxVisibilityExtensionSeconds(int maxVisibilityExtensionSeconds) {
+      if (maxVisibilityExtensionSeconds < 1 || maxVisibilityExtensionSeconds > 43200) {
+        throw new IllegalArgumentException(
+            "maxVisibilityExtensionSeconds must be between 1 and 43200");
+      }
+      this.maxVisibilityExtensionSeconds = maxVisibilityExtensionSeconds;
+      return this;
+    }
+
+    /**
+     * When positive, the spans of all messages in a receive are written to storage together, in
+     * writes of up to about this many spans, instead of one write per message. Messages are still
+     * deleted individually once the write including them completes. Zero writes each message
+     * separately, which is the default.
+     *
+     * @see #batchLingerMillis(int)
+     */
+    public Builder maxBatchSpans(int maxBatchSpans) {
+      if (maxBatchSpans < 0) throw new IllegalArgumentException("maxBatchSpans < 0");
+      this.maxBatchSpans = maxBatchSpans;
+      return this;
+    }
+
+    /**
+     * When batching spans, how long a partial batch waits for spans from other processors before
+     * it is written. This trades latency for fewer writes when there are many processors. Zero
+     * batches each receive separately, writing it at the end of the receive, which is the default.
+     */
+    public Builder batchLingerMillis(int batchLingerMillis) {
+      if (batchLingerMillis < 0) throw new IllegalArgumentException("batchLingerMillis < 0");
+      this.batchLingerMillis = batchLingerMillis;
+      return this;
+    }
+
+    /**
+     * When true and running on Java 21+, processors run on virtual threads instead of platform
+     * threads. As processors spend most of their time blocked on the long poll, this allows
+     * {@link #parallelism(int) parallelism} in the hundreds without the memory cost of platform
+     * thread stacks. Ignored with a warning on older runtimes. With the {@link
+     * #asyncClient(boolean) async client}, received messages are processed on virtual threads.
+     * Defaults to false.
+     */
+    public Builder virtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
     @Override
     public SQSCollector build() {
       return new SQSCollector(this);
@@ -122,47 +329,209 @@ public final class SQSCollector extends CollectorComponent {
 
   final AtomicBoolean closed = new AtomicBoolean(false);
   final LazySqsClient client;
-  final List<SQSSpanProcessor> processors = new ArrayList<>();
+  final LazySqsAsyncClient asyncClient; // null unless using the async engine
+  // Resolves messages offloaded to S3
+  final ClaimCheck claimCheck;
+  final List<SQSSpanProcessor> processors = new CopyOnWriteArrayList<>();
   final ExecutorService pool;
-  final int parallelism;
-  final int waitTimeSeconds;
+  // Only used when pipelined: runs the next receive for each processor. This is the same as pool,
+  // which is sized for both the processors and their outstanding receives.
+  final ExecutorService receivePool;
+  // Sends deletes and visibility changes with the blocking client. Null when using the async
+  // client.
+  final ExecutorService deletePool;
+  final DeleteBatcher deletes;
+  // Shared so that processors stop retrying together when SQS is unavailable
+  final CircuitBreaker breaker = new CircuitBreaker();
+  final VisibilityHeartbeat heartbeat; // null unless extending visibility timeouts
+  final SpanBatcher spanBatcher; // null unless batching spans across messages
+  // Reads queue depth for the autoscaler with the blocking client. Null when not autoscaling or
+  // using the async client.
+  final ExecutorService autoscalerPool;
+  // Schedules delete flushes and autoscaling. With the async engine, also backoff and polls
+  // waiting on permits.
+  final ScheduledExecutorService scheduler;
+  // Caps messages awaiting storage. Null when unlimited.
+  final Semaphore inFlight;
+  final StorageWriter writer;
+  final boolean pipelined;
+  final int parallelism, maxParallelism, targetDrainSeconds;
+  // Written by processors so that the autoscaler can estimate throughput and idle polling.
+  final LongAdder receives = new LongAdder(), emptyReceives = new LongAdder();
+  final LongAdder receivedMessages = new LongAdder();
+  // Time processors waited on the in-flight window before receiving
+  final LongAdder throttledNanos = new LongAdder();
+  final int waitTimeSeconds, visibilityTimeoutSeconds;
   final int maxNumberOfMessages;
-  final String queueUrl;
-  final Collector collector;
+  final WeightedQueues queues;
   final CollectorMetrics metrics;
 
   SQSCollector(Builder builder) {
     client = new LazySqsClient(builder);
-    collector = builder.delegate.build();
+    claimCheck = new ClaimCheck(builder);
+    if (builder.storage == null) throw new NullPointerException("storage == null");
     metrics = builder.metrics;
     parallelism = builder.parallelism;
     waitTimeSeconds = builder.waitTimeSeconds;
+    visibilityTimeoutSeconds = builder.visibilityTimeoutSeconds;
     maxNumberOfMessages = builder.maxNumberOfMessages;
-    queueUrl = builder.queueUrl;
+    ReceiveMessageRequest.Builder request = ReceiveMessageRequest.builder()
+        .waitTimeSeconds(waitTimeSeconds)
+        .maxNumberOfMessages(maxNumberOfMessages);
+    if (visibilityTimeoutSeconds > 0) request.visibilityTimeout(visibilityTimeoutSeconds);
+    Map<String, Integer> queueWeights = builder.queueWeights;
+    if (queueWeights.isEmpty()) queueWeights = Collections.singletonMap(null, 1);
+    queues = new WeightedQueues(queueWeights, request.build());
+    pipelined = builder.pipelined;
+    maxParallelism = Math.max(builder.parallelism, builder.maxParallelism);
+    targetDrainSeconds = builder.targetDrainSeconds;
+    writer = new StorageWriter(new SpanWriter(builder.storage, builder.sampler, metrics),
+        builder.awaitStorage || builder.maxInFlightMessages > 0);
+    inFlight = builder.maxInFlightMessages > 0
+        ? new Semaphore(Math.max(builder.maxInFlightMessages, maxNumberOfMessages))
+        : null;
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r);
+      thread.setName("SQSCollector-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    spanBatcher = builder.maxBatchSpans > 0
+        ? new SpanBatcher(writer, scheduler, builder.maxBatchSpans, builder.batchLingerMillis)
+        : null;
+
+    Supplier<ExecutorService> virtualThreads =
+        builder.virtualThreads ? virtualThreadExecutors() : null;
+    if (builder.asyncClient) {
+      asyncClient = new LazySqsAsyncClient(builder);
+      // Receives hold no thread, so the pool only decodes and stores what they return
+      pool = virtualThreads != null
+          ? virtualThreads.get()
+          : Executors.newFixedThreadPool(maxParallelism, r -> {
+            Thread thread = new Thread(r);
+            thread.setName("SQSCollector-process");
+            thread.setDaemon(true);
+            return thread;
+          });
+      receivePool = deletePool = autoscalerPool = null;
+      deletes = new DeleteBatcher(scheduler, closed,
+          request -> asyncClient().deleteMessageBatch(request));
+      heartbeat = visibilityTimeoutSeconds > 0
+          ? new VisibilityHeartbeat(scheduler,
+              request -> asyncClient().changeMessageVisibilityBatch(request),
+              visibilityTimeoutSeconds, builder.maxVisibilityExtensionSeconds)
+          : null;
+      return;
+    }
 
-    pool =
-        (builder.parallelism == 1)
-            ? Executors.newSingleThreadExecutor()
-            : Executors.newFixedThreadPool(builder.parallelism);
+    asyncClient = null;
+    if (virtualThreads != null) {
+      pool = virtualThreads.get();
+    } else {
+      // when pipelined, each processor has a blocking receive in flight besides its own loop
+      int threads = builder.pipelined ? maxParallelism * 2 : maxParallelism;
+      pool =
+          (threads == 1)
+              ? Executors.newSingleThreadExecutor()
+              : Executors.newFixedThreadPool(threads);
+    }
+    receivePool = builder.pipelined ? pool : null;
+    autoscalerPool = maxParallelism > parallelism
+        ? Executors.newSingleThreadExecutor(r -> {
+          Thread thread = new Thread(r);
+          thread.setName("SQSCollector-autoscaler");
+          thread.setDaemon(true);
+          return thread;
+        })
+        : null;
+    // Deletes are coalesced into batches of 10, so a couple of threads keep up with many processors
+    // Not the processor pool, which is stopped before acknowledged messages are deleted on close
+    deletePool = virtualThreads != null
+        ? virtualThreads.get()
+        : Executors.newFixedThreadPool(DELETE_THREADS, r -> {
+          Thread thread = new Thread(r);
+          thread.setName("SQSCollector-delete");
+          thread.setDaemon(true);
+          return thread;
+        });
+    deletes = new DeleteBatcher(scheduler, closed, request -> CompletableFuture.supplyAsync(
+        () -> client().deleteMessageBatch(request), deletePool));
+    heartbeat = visibilityTimeoutSeconds > 0
+        ? new VisibilityHeartbeat(scheduler, request -> CompletableFuture.supplyAsync(
+            () -> client().changeMessageVisibilityBatch(request), deletePool),
+            visibilityTimeoutSeconds, builder.maxVisibilityExtensionSeconds)
+        : null;
+  }
+
+  /**
+   * Returns a factory of virtual thread per task executors, or null if the runtime is older than
+   * Java 21. Resolve this once, so that the fallback to platform threads is only logged once.
+   */
+  static Supplier<ExecutorService> virtualThreadExecutors() {
+    Method newVirtualThreadPerTaskExecutor;
+    try {
+      newVirtualThreadPerTaskExecutor =
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      logger.log(Level.WARNING,
+          "virtual threads require Java 21+; falling back to platform threads");
+      return null;
+    }
+    return () -> {
+      try {
+        return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(e);
+      }
+    };
   }
 
   @Override
   public SQSCollector start() {
     if (!closed.get()) {
+      deletes.start();
+      if (heartbeat != null) heartbeat.start();
+      if (spanBatcher != null) spanBatcher.start();
       for (int i = 0; i < parallelism; i++) {
-        SQSSpanProcessor processor = new SQSSpanProcessor(this);
-        Future<?> task = pool.submit(processor);
-        if (task.isDone()) throw new IllegalStateException("processor quit " + processor);
-        processors.add(processor);
+        addProcessor();
+      }
+      if (maxParallelism > parallelism) {
+        SQSAutoscaler autoscaler = new SQSAutoscaler(this);
+        scheduler.scheduleWithFixedDelay(autoscaler, SQSAutoscaler.INTERVAL_SECONDS,
+            SQSAutoscaler.INTERVAL_SECONDS, TimeUnit.SECONDS);
       }
     }
     return this;
   }
 
+  void addProcessor() {
+    SQSSpanProcessor processor = new SQSSpanProcessor(this);
+    if (asyncClient != null) {
+      processor.poll();
+    } else {
+      Future<?> task = pool.submit(processor);
+      if (task.isDone()) throw new IllegalStateException("processor quit " + processor);
+    }
+    processors.add(processor);
+  }
+
+  /** Stops the most recently added processor after its current receive completes. */
+  void retireProcessor() {
+    int last = processors.size() - 1;
+    if (last < 0) return;
+    processors.remove(last).retire();
+  }
+
   @Override
   public CheckResult check() {
     try {
-      client(); // make sure compute doesn't throw an exception
+      // make sure compute doesn't throw an exception
+      if (asyncClient != null) {
+        asyncClient();
+      } else {
+        client();
+      }
       for (SQSSpanProcessor processor : processors) { // check if any processor have failed
         if (!processor.check().equals(CheckResult.OK)) {
           return processor.check();
@@ -178,16 +547,64 @@ public final class SQSCollector extends CollectorComponent {
     return client.get();
   }
 
+  SqsAsyncClient asyncClient() {
+    return asyncClient.get();
+  }
+
+  /** Count of storage writes of spans merged from messages, when batching spans. */
+  public long spanBatchCount() {
+    return spanBatcher != null ? spanBatcher.writes.sum() : 0L;
+  }
+
+  /** Count of {@code DeleteMessageBatch} requests completed, including failed ones. */
+  public long deleteRequestCount() {
+    return deletes.requests.sum();
+  }
+
+  /** Count of messages that failed to delete, including those later retried successfully. */
+  public long deleteFailureCount() {
+    return deletes.failures.sum();
+  }
+
+  /** Total time spent in completed {@code DeleteMessageBatch} requests. */
+  public long deleteLatencyNanos() {
+    return deletes.latencyNanos.sum();
+  }
+
+  /** Total time processors paused receiving while the in-flight window was full. */
+  public long throttledNanos() {
+    return throttledNanos.sum();
+  }
+
+  /** Count of messages whose visibility timeout was extended while awaiting storage. */
+  public long visibilityExtensionCount() {
+    return heartbeat != null ? heartbeat.extended.sum() : 0L;
+  }
+
+  /** Count of messages made visible again after their storage failed. */
+  public long visibilityReturnCount() {
+    return heartbeat != null ? heartbeat.returned.sum() : 0L;
+  }
+
   @Override
   public void close() {
+    closed.set(true);
     try {
-      if (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+      if (pool != null && !pool.awaitTermination(1, TimeUnit.SECONDS)) {
         pool.shutdownNow();
       }
     } catch (InterruptedException e) {
     } finally {
-      pool.shutdownNow();
+      if (pool != null) pool.shutdownNow();
+      if (spanBatcher != null) spanBatcher.flush();
+      // processors are stopped, so send what they acknowledged before closing the client
+      deletes.close(1, TimeUnit.SECONDS);
+      scheduler.shutdownNow();
+      if (autoscalerPool != null) autoscalerPool.shutdownNow();
+      if (deletePool != null) deletePool.shutdownNow();
+      if (asyncClient != null) asyncClient.close();
       client.close();
+      claimCheck.close();
     }
   }
 
@@ -225,4 +642,45 @@ public final class SQSCollector extends CollectorComponent {
       maybeClient.close();
     }
   }
+
+  private static final class LazySqsAsyncClient {
+    final AwsCredentialsProvider credentialsProvider;
+    final URI endpointOverride;
+    final String region;
+    final int maxConcurrency;
+    volatile SqsAsyncClient client;
+
+    LazySqsAsyncClient(Builder builder) {
+      this.credentialsProvider = builder.credentialsProvider;
+      this.endpointOverride = builder.endpointOverride;
+      this.region = builder.region;
+      // leave room for deletes alongside each outstanding receive, including those of processors
+      // added by autoscaling
+      this.maxConcurrency =
+          Math.max(50, Math.max(builder.parallelism, builder.maxParallelism) * 2);
+    }
+
+    SqsAsyncClient get() {
+      if (client == null) {
+        synchronized (this) {
+          if (client == null) {
+            SqsAsyncClientBuilder builder = SqsAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(maxConcurrency))
+                .credentialsProvider(credentialsProvider);
+            if (endpointOverride != null) builder.endpointOverride(endpointOverride);
+            if (region != null) builder.region(Region.of(region));
+            client = builder.build();
+          }
+        }
+      }
+      return client;
+    }
+
+    void close() {
+      SqsAsyncClient maybeClient = client;
+      if (maybeClient == null) return;
+      maybeClient.close();
+    }
+  }
 }
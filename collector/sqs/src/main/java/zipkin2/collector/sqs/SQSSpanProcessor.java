@@ -4,55 +4,99 @@
  */
 package zipkin2.collector.sqs;
 
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
-import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
 import software.amazon.awssdk.services.sqs.model.Message;
-import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import zipkin2.Callback;
 import zipkin2.CheckResult;
 import zipkin2.Component;
-import zipkin2.collector.Collector;
+import zipkin2.Span;
+import zipkin2.SpanBytesDecoderDetector;
+import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.collector.CollectorMetrics;
 
 final class SQSSpanProcessor extends Component implements Runnable {
 
   private static final Logger logger = Logger.getLogger(SQSSpanProcessor.class.getName());
 
-  private static final Charset UTF_8 = StandardCharsets.UTF_8;
   private static final long DEFAULT_BACKOFF = 100;
   private static final long MAX_BACKOFF = 30000;
+  private static final long IN_FLIGHT_RETRY = 50;
 
   final SqsClient client;
-  final Collector collector;
+  final SqsAsyncClient asyncClient; // non-null when using the async engine
+  final SQSCollector sqsCollector;
   final CollectorMetrics metrics;
-  final String queueUrl;
+  final WeightedQueues queues;
+  final int maxNumberOfMessages;
   final AtomicReference<CheckResult> status = new AtomicReference<>(CheckResult.OK);
   final AtomicBoolean closed;
-  final ReceiveMessageRequest request;
-  long failureBackoff = DEFAULT_BACKOFF;
+  final boolean pipelined;
+  // When non-null, the next receive runs here instead of inline.
+  final ExecutorService receivePool;
+  final DeleteBatcher deletes;
+  final ClaimCheck claimCheck;
+  final CircuitBreaker breaker;
+  final VisibilityHeartbeat heartbeat; // null unless extending visibility timeouts
+  // Only used by the async engine: backs off without holding a thread
+  final ScheduledExecutorService scheduler;
+  // Only used by the async engine: processes received messages off the client's event threads
+  final ExecutorService processPool;
+  final Semaphore inFlight;
+  final SpanBatcher spanBatcher; // null unless batching spans across messages
+  final LongAdder receives, emptyReceives, receivedMessages, throttledNanos;
+  volatile boolean retired; // set when autoscaling removes this processor
+  // Atomic as async receives of a pipelined processor complete concurrently on different threads
+  final AtomicLong failureBackoff = new AtomicLong(DEFAULT_BACKOFF);
+  // When the async engine first failed to acquire permits, or zero
+  final AtomicLong throttledSince = new AtomicLong();
 
   SQSSpanProcessor(SQSCollector sqsCollector) {
-    client = sqsCollector.client();
-    collector = sqsCollector.collector;
+    if (sqsCollector.asyncClient != null) {
+      client = null;
+      asyncClient = sqsCollector.asyncClient();
+    } else {
+      client = sqsCollector.client();
+      asyncClient = null;
+    }
+    this.sqsCollector = sqsCollector;
     metrics = sqsCollector.metrics;
-    queueUrl = sqsCollector.queueUrl;
+    queues = sqsCollector.queues;
+    maxNumberOfMessages = sqsCollector.maxNumberOfMessages;
     closed = sqsCollector.closed;
-    request = ReceiveMessageRequest.builder()
-        .queueUrl(queueUrl)
-        .waitTimeSeconds(sqsCollector.waitTimeSeconds)
-        .maxNumberOfMessages(sqsCollector.maxNumberOfMessages)
-        .build();
+    pipelined = sqsCollector.pipelined;
+    receivePool = sqsCollector.receivePool;
+    deletes = sqsCollector.deletes;
+    claimCheck = sqsCollector.claimCheck;
+    breaker = sqsCollector.breaker;
+    heartbeat = sqsCollector.heartbeat;
+    scheduler = sqsCollector.scheduler;
+    processPool = sqsCollector.pool;
+    inFlight = sqsCollector.inFlight;
+    spanBatcher = sqsCollector.spanBatcher;
+    receives = sqsCollector.receives;
+    emptyReceives = sqsCollector.emptyReceives;
+    receivedMessages = sqsCollector.receivedMessages;
+    throttledNanos = sqsCollector.throttledNanos;
   }
 
   @Override
@@ -65,90 +109,275 @@ final class SQSSpanProcessor extends Component implements Runnable {
     // the collector owns closing of its resources so noop here
   }
 
+  /** Stops receiving once the current receive completes. */
+  void retire() {
+    retired = true;
+  }
+
+  boolean stopped() {
+    return retired || closed.get();
+  }
+
   @Override
   public void run() {
-    while (!closed.get()) {
+    Future<Batch> next = null;
+    while (!stopped()) {
       try {
-        process(client.receiveMessage(request).messages());
+        Batch batch;
+        if (receivePool != null) {
+          if (next == null) next = receivePool.submit(this::receive);
+          batch = next.get();
+          // keep a long poll in flight while this batch is decoded and stored
+          next = receivePool.submit(this::receive);
+        } else {
+          batch = receive();
+        }
+        process(batch.queue.url, batch.messages);
         status.lazySet(CheckResult.OK);
-        failureBackoff = DEFAULT_BACKOFF;
-      } catch (AbortedException ae) {
-        status.lazySet(CheckResult.failed(ae));
+        failureBackoff.set(DEFAULT_BACKOFF);
+      } catch (ExecutionException e) {
+        next = null; // the failed receive is no longer in flight
+        onFailure(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       } catch (Exception e) {
-        logger.log(Level.WARNING, "sqs receive failed", e);
-        status.lazySet(CheckResult.failed(e));
+        onFailure(e);
+      }
+    }
+    if (next != null) next.cancel(true);
+  }
 
-        // backoff on failures to avoid pinging SQS in a tight loop if there are failures.
-        try {
-          Thread.sleep(failureBackoff);
-        } catch (InterruptedException ie) {
-        } finally {
-          failureBackoff = Math.max(failureBackoff * 2, MAX_BACKOFF);
-        }
+  /** Messages received from a queue */
+  static final class Batch {
+    final WeightedQueues.Queue queue;
+    final List<Message> messages;
+
+    Batch(WeightedQueues.Queue queue, List<Message> messages) {
+      this.queue = queue;
+      this.messages = messages;
+    }
+  }
+
+  Batch receive() throws InterruptedException {
+    long delay;
+    while ((delay = breaker.delayNanos()) > 0 && !stopped()) TimeUnit.NANOSECONDS.sleep(delay);
+    int permits = maxNumberOfMessages;
+    if (inFlight != null && !inFlight.tryAcquire(permits)) {
+      long start = System.nanoTime();
+      try {
+        inFlight.acquire(permits);
+      } finally {
+        throttledNanos.add(System.nanoTime() - start);
       }
     }
+    WeightedQueues.Queue queue = queues.next();
+    try {
+      List<Message> messages =
+          recordReceive(queue, client.receiveMessage(queue.request).messages());
+      release(permits - messages.size());
+      return new Batch(queue, messages);
+    } catch (RuntimeException e) {
+      queues.done(queue, -1);
+      release(permits);
+      throw e;
+    }
   }
 
-  private void process(final List<Message> messages) {
-    if (messages.isEmpty()) return;
+  List<Message> recordReceive(WeightedQueues.Queue queue, List<Message> messages) {
+    queues.done(queue, messages.size());
+    breaker.onSuccess();
+    receives.increment();
+    if (messages.isEmpty()) {
+      emptyReceives.increment();
+    } else {
+      receivedMessages.add(messages.size());
+    }
+    return messages;
+  }
 
-    final List<DeleteMessageBatchRequestEntry> toDelete = new ArrayList<>();
-    int count = 0;
+  void onFailure(Throwable e) {
+    if (e instanceof AbortedException) {
+      status.lazySet(CheckResult.failed(e));
+      return;
+    }
+    logger.log(Level.WARNING, "sqs receive failed", e);
+    status.lazySet(CheckResult.failed(e));
+    breaker.onFailure();
+
+    // backoff on failures to avoid pinging SQS in a tight loop if there are failures.
+    long backoff = failureBackoff.updateAndGet(SQSSpanProcessor::nextBackoff);
+    try {
+      Thread.sleep(backoff);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Decorrelated jitter: a random backoff between the default and triple the previous one, capped
+   * at the max. Unlike doubling, processors that failed together retry at different times.
+   */
+  static long nextBackoff(long previous) {
+    long upper = Math.max(DEFAULT_BACKOFF, Math.min(MAX_BACKOFF, previous * 3));
+    return ThreadLocalRandom.current().nextLong(DEFAULT_BACKOFF, upper + 1);
+  }
+
+  /**
+   * Issues a receive on the async client. Each completion schedules the next receive, so this
+   * processor holds no thread while waiting on the long poll.
+   */
+  void poll() {
+    if (stopped()) return;
+    long delay = breaker.delayNanos();
+    if (delay > 0) {
+      scheduler.schedule(this::poll, delay, TimeUnit.NANOSECONDS);
+      return;
+    }
+    int permits = maxNumberOfMessages;
+    if (inFlight != null && !inFlight.tryAcquire(permits)) {
+      throttledSince.compareAndSet(0L, System.nanoTime());
+      scheduler.schedule(this::poll, IN_FLIGHT_RETRY, TimeUnit.MILLISECONDS);
+      return;
+    }
+    long since = throttledSince.getAndSet(0L);
+    if (since != 0L) throttledNanos.add(System.nanoTime() - since);
+    WeightedQueues.Queue queue = queues.next();
+    // Processing can block, such as reading offloaded messages from S3, so it mustn't run on the
+    // client's event threads, which would stall other receives and deletes.
+    asyncClient.receiveMessage(queue.request).whenCompleteAsync((response, error) -> {
+      if (error != null) {
+        queues.done(queue, -1);
+        release(permits);
+        onAsyncFailure(error instanceof CompletionException ? error.getCause() : error);
+        return;
+      }
+      List<Message> messages = recordReceive(queue, response.messages());
+      release(permits - messages.size());
+      if (pipelined) poll(); // keep a long poll in flight while this batch is stored
+      try {
+        process(queue.url, messages);
+        status.lazySet(CheckResult.OK);
+        failureBackoff.set(DEFAULT_BACKOFF);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "sqs processing failed", e);
+        status.lazySet(CheckResult.failed(e));
+      }
+      if (!pipelined) poll();
+    }, processPool);
+  }
+
+  void onAsyncFailure(Throwable e) {
+    status.lazySet(CheckResult.failed(e));
+    if (stopped()) return;
+    if (!(e instanceof AbortedException)) logger.log(Level.WARNING, "sqs receive failed", e);
+    breaker.onFailure();
+
+    // backoff on failures to avoid pinging SQS in a tight loop if there are failures.
+    long backoff = failureBackoff.updateAndGet(SQSSpanProcessor::nextBackoff);
+    scheduler.schedule(this::poll, backoff, TimeUnit.MILLISECONDS);
+  }
+
+  void release(int permits) {
+    if (inFlight != null && permits > 0) inFlight.release(permits);
+  }
+
+  private void process(String queueUrl, List<Message> messages) {
+    SpanBatcher.Pending pending = spanBatcher != null ? spanBatcher.newReceive() : null;
     for (Message message : messages) {
-      final String deleteId = String.valueOf(count++);
       try {
         String stringBody = message.body();
-        if (stringBody.isEmpty() || stringBody.equals("[]")) continue;
-        // allow plain-text json, but permit base64 encoded thrift or json
-        byte[] serialized =
-            stringBody.charAt(0) == '[' ? stringBody.getBytes(UTF_8)
-                : Base64.getDecoder().decode(stringBody);
+        if (stringBody.isEmpty() || stringBody.equals("[]")) {
+          release(1);
+          continue;
+        }
+        if (heartbeat != null) heartbeat.track(queueUrl, message.receiptHandle());
+        ByteBuffer serialized;
+        if (ClaimCheck.isPointer(stringBody)) {
+          serialized = resolve(queueUrl, message);
+          if (serialized == null) continue;
+        } else {
+          serialized = MessageBodyDecoder.get().decode(stringBody);
+        }
         metrics.incrementMessages();
-        metrics.incrementBytes(serialized.length);
-        collector.acceptSpans(serialized, new Callback<>() {
+        metrics.incrementBytes(serialized.remaining());
+        List<Span> spans;
+        try {
+          spans = decodeList(serialized);
+        } catch (RuntimeException e) {
+          metrics.incrementMessagesDropped();
+          throw e;
+        }
+        accept(pending, spans, new Callback<>() {
           @Override
           public void onSuccess(Void value) {
-            toDelete.add(DeleteMessageBatchRequestEntry.builder()
-                .id(deleteId)
-                .receiptHandle(message.receiptHandle())
-                .build());
+            release(1);
+            delete(queueUrl, message);
           }
 
           @Override
           public void onError(Throwable t) {
+            release(1);
             logger.log(Level.WARNING, "collector accept failed", t);
             // for cases that are not recoverable just discard the message,
             // otherwise ignore so processing can be retried.
             if (t instanceof IllegalArgumentException) {
-              toDelete.add(DeleteMessageBatchRequestEntry.builder()
-                  .id(deleteId)
-                  .receiptHandle(message.receiptHandle())
-                  .build());
+              delete(queueUrl, message);
+            } else if (heartbeat != null) {
+              heartbeat.giveBack(queueUrl, message.receiptHandle());
             }
           }
         });
       } catch (RuntimeException | Error e) {
+        release(1);
         logger.log(Level.WARNING, "message decoding failed", e);
-        toDelete.add(DeleteMessageBatchRequestEntry.builder()
-            .id(deleteId)
-            .receiptHandle(message.receiptHandle())
-            .build());
+        delete(queueUrl, message);
       }
     }
+    // Messages of this receive are written together, unless lingering for other processors
+    if (pending != null) pending.endOfReceive();
+  }
+
+  /**
+   * Returns the spans offloaded to S3, or null if they couldn't be read now. In that case, the
+   * message is left to be received again, unless the object no longer exists.
+   */
+  ByteBuffer resolve(String queueUrl, Message message) {
+    try {
+      return claimCheck.resolve(message.body());
+    } catch (NoSuchKeyException e) {
+      throw e; // likely expired by a lifecycle rule, so retrying won't help
+    } catch (SdkException e) {
+      release(1);
+      logger.log(Level.WARNING, "reading offloaded message failed", e);
+      if (heartbeat != null) heartbeat.giveBack(queueUrl, message.receiptHandle());
+      return null;
+    }
+  }
+
+  void delete(String queueUrl, Message message) {
+    // A message given back after the max extension is left to whoever receives it next
+    if (heartbeat != null && !heartbeat.untrack(queueUrl, message.receiptHandle())) return;
+    deletes.add(queueUrl, message.receiptHandle());
+  }
 
-    if (!toDelete.isEmpty()) {
-      delete(toDelete);
+  /** Writes the message's spans, or adds them to the pending batch when batching spans. */
+  void accept(SpanBatcher.Pending pending, List<Span> spans, Callback<Void> callback) {
+    if (pending != null) {
+      pending.add(spans, callback);
+    } else {
+      sqsCollector.writer.write(spans, callback);
     }
   }
 
-  private void delete(List<DeleteMessageBatchRequestEntry> entries) {
-    client.deleteMessageBatch(DeleteMessageBatchRequest.builder()
-        .queueUrl(queueUrl)
-        .entries(entries)
-        .build());
+  /** Decodes spans before the buffer backing {@code serialized} is reused by this thread. */
+  static List<Span> decodeList(ByteBuffer serialized) {
+    SpanBytesDecoder decoder =
+        (SpanBytesDecoder) SpanBytesDecoderDetector.decoderForListMessage(serialized.duplicate());
+    return decoder.decodeList(serialized);
   }
 
   @Override public String toString() {
-    return "SQSSpanProcessor{queueUrl=" + queueUrl + "}";
+    return "SQSSpanProcessor{queueUrls=" + queues.queues + "}";
   }
 }
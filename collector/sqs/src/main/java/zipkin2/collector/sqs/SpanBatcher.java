@@ -0,0 +1,124 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import zipkin2.Callback;
+import zipkin2.Span;
+
+/**
+ * Merges the spans of many messages into fewer, larger storage writes. Small messages from chatty
+ * reporters otherwise result in a write each, such as many tiny Elasticsearch bulk requests.
+ *
+ * <p>Messages are still acknowledged individually: each message's callback completes with the
+ * write that included its spans, so a failed write leaves all of its messages to be received
+ * again. A batch is written once it reaches {@link #maxSpans}. Otherwise, each receive fills its
+ * own batch, written at the end of the receive, unless {@link #lingerMillis} is set. In that case,
+ * processors share a batch written every {@link #lingerMillis}.
+ */
+final class SpanBatcher {
+  final StorageWriter writer;
+  final ScheduledExecutorService scheduler;
+  final int maxSpans;
+  final long lingerMillis;
+  final Pending shared; // null unless lingering
+
+  final LongAdder writes = new LongAdder();
+
+  SpanBatcher(StorageWriter writer, ScheduledExecutorService scheduler, int maxSpans,
+      long lingerMillis) {
+    this.writer = writer;
+    this.scheduler = scheduler;
+    this.maxSpans = maxSpans;
+    this.lingerMillis = lingerMillis;
+    this.shared = lingerMillis > 0 ? new Pending() : null;
+  }
+
+  void start() {
+    if (shared == null) return;
+    scheduler.scheduleWithFixedDelay(shared::flush, lingerMillis, lingerMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns where a receive adds its messages' spans. Without lingering, this is a batch of its
+   * own, so ending the receive doesn't write what other processors are still adding to.
+   */
+  Pending newReceive() {
+    return shared != null ? shared : new Pending();
+  }
+
+  /** Writes any partial batch shared by processors. */
+  void flush() {
+    if (shared != null) shared.flush();
+  }
+
+  /** Spans of messages not yet written. */
+  final class Pending {
+    List<Span> spans = new ArrayList<>(); // guarded by this
+    List<Callback<Void>> callbacks = new ArrayList<>(); // guarded by this
+
+    /** Adds a message's spans. The callback completes with the write that includes them. */
+    void add(List<Span> messageSpans, Callback<Void> callback) {
+      Batch batch;
+      synchronized (this) {
+        spans.addAll(messageSpans);
+        callbacks.add(callback);
+        if (spans.size() < maxSpans) return;
+        batch = take();
+      }
+      batch.write();
+    }
+
+    /** Called after a processor adds the messages of a receive. */
+    void endOfReceive() {
+      if (this != shared) flush();
+    }
+
+    /** Writes any partial batch. */
+    void flush() {
+      Batch batch;
+      synchronized (this) {
+        if (callbacks.isEmpty()) return;
+        batch = take();
+      }
+      batch.write();
+    }
+
+    Batch take() { // guarded by this
+      Batch batch = new Batch(spans, callbacks);
+      spans = new ArrayList<>();
+      callbacks = new ArrayList<>();
+      return batch;
+    }
+  }
+
+  final class Batch implements Callback<Void> {
+    final List<Span> spans;
+    final List<Callback<Void>> callbacks;
+
+    Batch(List<Span> spans, List<Callback<Void>> callbacks) {
+      this.spans = spans;
+      this.callbacks = callbacks;
+    }
+
+    void write() {
+      writes.increment();
+      writer.write(spans, this);
+    }
+
+    @Override public void onSuccess(Void value) {
+      for (Callback<Void> callback : callbacks) callback.onSuccess(value);
+    }
+
+    @Override public void onError(Throwable t) {
+      for (Callback<Void> callback : callbacks) callback.onError(t);
+    }
+  }
+}
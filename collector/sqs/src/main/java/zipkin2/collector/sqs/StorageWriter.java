@@ -0,0 +1,57 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.List;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.collector.aws.internal.SpanWriter;
+
+/**
+ * Samples spans and writes them to storage. This is the only way spans of a message, or of a batch
+ * of messages, reach storage.
+ *
+ * <p>Unless {@link #awaitStorage}, the callback completes once the write is enqueued, like {@link
+ * zipkin2.collector.Collector}, so that the message is deleted without waiting for storage.
+ */
+final class StorageWriter {
+  final SpanWriter writer;
+  final boolean awaitStorage;
+
+  StorageWriter(SpanWriter writer, boolean awaitStorage) {
+    this.writer = writer;
+    this.awaitStorage = awaitStorage;
+  }
+
+  /**
+   * Samples and stores the spans. A failed write is counted as dropped, and fails the callback
+   * unless it already completed because the write was enqueued.
+   */
+  void write(List<Span> spans, Callback<Void> callback) {
+    List<Span> sampled = writer.sample(spans);
+    if (sampled.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+
+    try {
+      writer.write(sampled, new Callback<>() {
+        @Override public void onSuccess(Void value) {
+          if (awaitStorage) callback.onSuccess(value);
+        }
+
+        @Override public void onError(Throwable t) {
+          writer.dropped(sampled, t);
+          if (awaitStorage) callback.onError(t); // otherwise, the message was already deleted
+        }
+      });
+    } catch (RuntimeException e) {
+      writer.dropped(sampled, e);
+      callback.onError(e);
+      return;
+    }
+    if (!awaitStorage) callback.onSuccess(null);
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+
+/**
+ * Keeps messages awaiting storage invisible to other consumers by extending their visibility
+ * timeout every half timeout, using full {@code ChangeMessageVisibilityBatch} calls.
+ *
+ * <p>Messages whose storage failed are instead made visible immediately, so that they are retried
+ * without waiting out the rest of the timeout. So are messages held longer than {@link
+ * #maxExtensionNanos}, so that storage which is stuck doesn't keep them from other consumers.
+ * Once given back, a message is no longer deleted by the processor that received it.
+ */
+final class VisibilityHeartbeat {
+  static final Logger logger = Logger.getLogger(VisibilityHeartbeat.class.getName());
+
+  final ScheduledExecutorService scheduler;
+  // Sends a request with the async client, or the blocking one on another thread
+  final Function<ChangeMessageVisibilityBatchRequest,
+      CompletableFuture<ChangeMessageVisibilityBatchResponse>> changeMessageVisibilityBatch;
+  final int visibilityTimeoutSeconds;
+  final long maxExtensionNanos;
+  // Receipt handles per queue URL awaiting storage, to when they were tracked
+  final Map<String, Map<String, Long>> tracked = new ConcurrentHashMap<>();
+  // Receipt handles per queue URL to make visible again
+  final Map<String, List<String>> returning = new ConcurrentHashMap<>();
+
+  final LongAdder extended = new LongAdder(), returned = new LongAdder();
+
+  VisibilityHeartbeat(ScheduledExecutorService scheduler,
+      Function<ChangeMessageVisibilityBatchRequest,
+          CompletableFuture<ChangeMessageVisibilityBatchResponse>> changeMessageVisibilityBatch,
+      int visibilityTimeoutSeconds, int maxExtensionSeconds) {
+    this.scheduler = scheduler;
+    this.changeMessageVisibilityBatch = changeMessageVisibilityBatch;
+    this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+    this.maxExtensionNanos = TimeUnit.SECONDS.toNanos(maxExtensionSeconds);
+  }
+
+  void start() {
+    long interval = Math.max(1, visibilityTimeoutSeconds / 2);
+    scheduler.scheduleWithFixedDelay(this::extend, interval, interval, TimeUnit.SECONDS);
+    scheduler.scheduleWithFixedDelay(this::flushReturns, DeleteBatcher.LINGER_MILLIS,
+        DeleteBatcher.LINGER_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Extends the visibility of this message until {@link #untrack} or {@link #giveBack}. */
+  void track(String queueUrl, String receiptHandle) {
+    tracked.computeIfAbsent(queueUrl, k -> new ConcurrentHashMap<>())
+        .put(receiptHandle, System.nanoTime());
+  }
+
+  /**
+   * Stops extending this message. Returns false if it was already given back, in which case it
+   * mustn't be deleted, as another consumer may be processing it.
+   */
+  boolean untrack(String queueUrl, String receiptHandle) {
+    Map<String, Long> receiptHandles = tracked.get(queueUrl);
+    return receiptHandles != null && receiptHandles.remove(receiptHandle) != null;
+  }
+
+  /** Stops extending this message and makes it visible to consumers again. */
+  void giveBack(String queueUrl, String receiptHandle) {
+    if (!untrack(queueUrl, receiptHandle)) return; // already given back
+    List<String> batch;
+    List<String> receiptHandles = returning.computeIfAbsent(queueUrl, k -> new ArrayList<>());
+    synchronized (receiptHandles) {
+      receiptHandles.add(receiptHandle);
+      if (receiptHandles.size() < DeleteBatcher.MAX_BATCH_SIZE) return;
+      batch = new ArrayList<>(receiptHandles);
+      receiptHandles.clear();
+    }
+    send(queueUrl, batch, 0);
+  }
+
+  void flushReturns() {
+    returning.forEach((queueUrl, receiptHandles) -> {
+      List<String> batch;
+      synchronized (receiptHandles) {
+        if (receiptHandles.isEmpty()) return;
+        batch = new ArrayList<>(receiptHandles);
+        receiptHandles.clear();
+      }
+      send(queueUrl, batch, 0);
+    });
+  }
+
+  void extend() {
+    try {
+      long now = System.nanoTime();
+      tracked.forEach((queueUrl, receiptHandles) -> {
+        List<String> batch = new ArrayList<>(DeleteBatcher.MAX_BATCH_SIZE);
+        List<String> expired = new ArrayList<>();
+        receiptHandles.forEach((receiptHandle, trackedNanos) -> {
+          if (now - trackedNanos >= maxExtensionNanos) {
+            expired.add(receiptHandle);
+            return;
+          }
+          batch.add(receiptHandle);
+          if (batch.size() == DeleteBatcher.MAX_BATCH_SIZE) {
+            send(queueUrl, new ArrayList<>(batch), visibilityTimeoutSeconds);
+            batch.clear();
+          }
+        });
+        if (!batch.isEmpty()) send(queueUrl, batch, visibilityTimeoutSeconds);
+        if (!expired.isEmpty()) {
+          logger.fine(() -> "giving back " + expired.size() + " sqs messages awaiting storage");
+        }
+        for (String receiptHandle : expired) giveBack(queueUrl, receiptHandle);
+      });
+    } catch (RuntimeException e) {
+      // don't cancel the heartbeat; the next interval will try again
+      logger.log(Level.FINE, "sqs visibility heartbeat failed", e);
+    }
+  }
+
+  void send(String queueUrl, List<String> receiptHandles, int visibilityTimeout) {
+    List<ChangeMessageVisibilityBatchRequestEntry> entries =
+        new ArrayList<>(receiptHandles.size());
+    for (int i = 0; i < receiptHandles.size(); i++) {
+      entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+          .id(String.valueOf(i))
+          .receiptHandle(receiptHandles.get(i))
+          .visibilityTimeout(visibilityTimeout)
+          .build());
+    }
+    ChangeMessageVisibilityBatchRequest request = ChangeMessageVisibilityBatchRequest.builder()
+        .queueUrl(queueUrl)
+        .entries(entries)
+        .build();
+
+    CompletableFuture<ChangeMessageVisibilityBatchResponse> result;
+    try {
+      result = changeMessageVisibilityBatch.apply(request);
+    } catch (RuntimeException e) { // such as rejected execution after close
+      logger.log(Level.FINE, "sqs visibility change not sent", e);
+      return;
+    }
+    result.whenComplete((response, error) -> {
+      if (error != null) {
+        // Not retried: the next heartbeat extends again, and returns become visible on timeout
+        logger.log(Level.FINE, "sqs visibility change failed", error);
+        return;
+      }
+      int succeeded = response.successful().size();
+      if (visibilityTimeout == 0) {
+        returned.add(succeeded);
+      } else {
+        extended.add(succeeded);
+      }
+      // Failures are usually messages deleted since the batch was built
+      response.failed().forEach(failed -> logger.fine(
+          () -> "sqs visibility change failed: " + failed.code() + " " + failed.message()));
+    });
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+/**
+ * Chooses the queue for each receive, so that all processors share the queues of a collector.
+ *
+ * <p>Queues are chosen by smooth weighted round-robin, which interleaves queues in proportion to
+ * their weight instead of in bursts. A queue whose last receive was empty is only polled by one
+ * processor at a time, which is enough to notice new messages, leaving the other processors to
+ * busy queues.
+ */
+final class WeightedQueues {
+
+  static final class Queue {
+    final String url;
+    final int weight;
+    final ReceiveMessageRequest request;
+    int currentWeight, polling; // guarded by WeightedQueues
+    boolean idle;
+
+    Queue(String url, int weight, ReceiveMessageRequest request) {
+      this.url = url;
+      this.weight = weight;
+      this.request = request;
+    }
+
+    @Override public String toString() {
+      return url;
+    }
+  }
+
+  final List<Queue> queues;
+
+  /**
+   * @param weights queue URLs in iteration order, mapped to their weight
+   * @param template receive settings shared by all queues
+   */
+  WeightedQueues(Map<String, Integer> weights, ReceiveMessageRequest template) {
+    List<Queue> queues = new ArrayList<>(weights.size());
+    weights.forEach((url, weight) ->
+        queues.add(new Queue(url, weight, template.toBuilder().queueUrl(url).build())));
+    this.queues = queues;
+  }
+
+  /** Returns the queue to receive from next. Call {@link #done} when the receive completes. */
+  synchronized Queue next() {
+    Queue next = choose(true);
+    if (next == null) next = choose(false); // all queues are idle and already being polled
+    next.polling++;
+    return next;
+  }
+
+  Queue choose(boolean skipPolledIdle) {
+    Queue best = null;
+    int totalWeight = 0;
+    for (Queue queue : queues) {
+      if (skipPolledIdle && queue.idle && queue.polling > 0) continue;
+      queue.currentWeight += queue.weight;
+      totalWeight += queue.weight;
+      if (best == null || queue.currentWeight > best.currentWeight) best = queue;
+    }
+    if (best != null) best.currentWeight -= totalWeight;
+    return best;
+  }
+
+  /** Records the outcome of a receive. A negative count means it failed. */
+  synchronized void done(Queue queue, int receivedMessages) {
+    queue.polling--;
+    if (receivedMessages >= 0) queue.idle = receivedMessages == 0;
+  }
+}
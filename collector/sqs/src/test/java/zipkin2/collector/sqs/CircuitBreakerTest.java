@@ -0,0 +1,43 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+  CircuitBreaker breaker = new CircuitBreaker();
+
+  @Test void staysClosed_belowThreshold() {
+    for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) breaker.onFailure();
+
+    assertThat(breaker.delayNanos()).isZero();
+  }
+
+  @Test void opens_atThreshold() {
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) breaker.onFailure();
+
+    assertThat(breaker.delayNanos())
+        .isPositive()
+        .isLessThanOrEqualTo(MILLISECONDS.toNanos(CircuitBreaker.OPEN_MILLIS));
+  }
+
+  @Test void success_closes() {
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) breaker.onFailure();
+    breaker.onSuccess();
+
+    assertThat(breaker.delayNanos()).isZero();
+  }
+
+  @Test void halfOpen_letsOneCallerProbe() {
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) breaker.onFailure();
+    breaker.retryAtNanos.set(System.nanoTime() - 1); // open time elapsed
+
+    assertThat(breaker.delayNanos()).isZero(); // the probe
+    assertThat(breaker.delayNanos()).isPositive(); // others wait for its outcome
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class DeleteBatcherTest {
+  static final String QUEUE_URL = "http://localhost:9324/queue/zipkin";
+
+  ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  List<DeleteMessageBatchRequest> requests = new CopyOnWriteArrayList<>();
+  // Responses to requests in order; once empty, all entries succeed
+  Queue<DeleteMessageBatchResponse> responses = new ConcurrentLinkedQueue<>();
+  DeleteBatcher deletes = new DeleteBatcher(scheduler, new AtomicBoolean(), request -> {
+    requests.add(request);
+    DeleteMessageBatchResponse response = responses.poll();
+    return CompletableFuture.completedFuture(
+        response != null ? response : DeleteMessageBatchResponse.builder().build());
+  });
+
+  @AfterEach void close() {
+    scheduler.shutdownNow();
+  }
+
+  @Test void partialBatch_sentAfterLinger() {
+    deletes.start();
+
+    deletes.add(QUEUE_URL, "a");
+    deletes.add(QUEUE_URL, "b");
+    assertThat(requests).isEmpty();
+
+    await().until(() -> !requests.isEmpty());
+    assertThat(requests).hasSize(1);
+    assertThat(receiptHandles(requests.get(0))).containsExactly("a", "b");
+  }
+
+  @Test void fullBatch_sentImmediately() {
+    List<String> receiptHandles = new ArrayList<>();
+    for (int i = 0; i < DeleteBatcher.MAX_BATCH_SIZE; i++) {
+      receiptHandles.add("handle-" + i);
+      deletes.add(QUEUE_URL, "handle-" + i);
+    }
+
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).queueUrl()).isEqualTo(QUEUE_URL);
+    assertThat(receiptHandles(requests.get(0))).isEqualTo(receiptHandles);
+    assertThat(deletes.requests.sum()).isEqualTo(1);
+  }
+
+  @Test void retriesFailedEntries_exceptSenderFaults() {
+    responses.add(DeleteMessageBatchResponse.builder()
+        .failed(failed("1", false), failed("2", true))
+        .build());
+
+    deletes.add(QUEUE_URL, "a");
+    deletes.add(QUEUE_URL, "b");
+    deletes.add(QUEUE_URL, "c");
+    deletes.flush();
+
+    await().until(() -> requests.size() == 2);
+    assertThat(receiptHandles(requests.get(1))).containsExactly("b");
+    assertThat(deletes.failures.sum()).isEqualTo(2);
+  }
+
+  @Test void givesUp_afterMaxAttempts() throws Exception {
+    for (int i = 0; i < DeleteBatcher.MAX_ATTEMPTS + 1; i++) {
+      responses.add(DeleteMessageBatchResponse.builder().failed(failed("0", false)).build());
+    }
+
+    deletes.add(QUEUE_URL, "a");
+    deletes.flush();
+
+    await().until(() -> requests.size() == DeleteBatcher.MAX_ATTEMPTS);
+    Thread.sleep(DeleteBatcher.LINGER_MILLIS * (DeleteBatcher.MAX_ATTEMPTS + 1));
+    assertThat(requests).hasSize(DeleteBatcher.MAX_ATTEMPTS);
+    assertThat(deletes.failures.sum()).isEqualTo(DeleteBatcher.MAX_ATTEMPTS);
+  }
+
+  static BatchResultErrorEntry failed(String id, boolean senderFault) {
+    return BatchResultErrorEntry.builder()
+        .id(id)
+        .code(senderFault ? "ReceiptHandleIsInvalid" : "InternalError")
+        .senderFault(senderFault)
+        .build();
+  }
+
+  static List<String> receiptHandles(DeleteMessageBatchRequest request) {
+    return request.entries().stream().map(DeleteMessageBatchRequestEntry::receiptHandle).toList();
+  }
+}
@@ -4,26 +4,37 @@
  */
 package zipkin2.collector.sqs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import zipkin2.Call;
 import zipkin2.Span;
 import zipkin2.TestObjects;
 import zipkin2.codec.SpanBytesEncoder;
 import zipkin2.collector.CollectorComponent;
 import zipkin2.collector.CollectorSampler;
 import zipkin2.collector.InMemoryCollectorMetrics;
+import zipkin2.junit.aws.AmazonS3Extension;
 import zipkin2.junit.aws.AmazonSQSExtension;
+import zipkin2.storage.ForwardingStorageComponent;
 import zipkin2.storage.InMemoryStorage;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.StorageComponent;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
@@ -32,6 +43,7 @@ import static org.awaitility.Awaitility.await;
 
 class ITSQSCollector {
   @RegisterExtension AmazonSQSExtension sqs = new AmazonSQSExtension();
+  @RegisterExtension AmazonS3Extension s3 = new AmazonS3Extension();
 
   List<Span> spans =
       asList( // No unicode or data that doesn't translate between json formats
@@ -45,7 +57,12 @@ class ITSQSCollector {
     store = InMemoryStorage.newBuilder().build();
     metrics = new InMemoryCollectorMetrics();
 
-    collector = new SQSCollector.Builder()
+    collector = builder().build().start();
+    metrics = metrics.forTransport("sqs");
+  }
+
+  SQSCollector.Builder builder() {
+    return new SQSCollector.Builder()
         .queueUrl(sqs.queueUrl())
         .parallelism(2)
         .waitTimeSeconds(1) // using short wait time to make test teardown faster
@@ -55,10 +72,7 @@ class ITSQSCollector {
             StaticCredentialsProvider.create(AwsBasicCredentials.create("x", "x")))
         .metrics(metrics)
         .sampler(CollectorSampler.ALWAYS_SAMPLE)
-        .storage(store)
-        .build()
-        .start();
-    metrics = metrics.forTransport("sqs");
+        .storage(store);
   }
 
   @AfterEach void teardown() throws IOException {
@@ -115,6 +129,238 @@ class ITSQSCollector {
     assertSpansAccepted(lots);
   }
 
+  @Test void collectLotsOfSpans_pipelined() throws Exception {
+    collector.close();
+    collector = builder().pipelined(true).build().start();
+
+    collectLotsOfSpans();
+  }
+
+  @Test void collectLotsOfSpans_asyncClient() throws Exception {
+    collector.close();
+    collector = builder().asyncClient(true).maxInFlightMessages(50).build().start();
+
+    collectLotsOfSpans();
+  }
+
+  @Test void collectLotsOfSpans_awaitStorage() throws Exception {
+    collector.close();
+    collector = builder().awaitStorage(true).maxInFlightMessages(20).build().start();
+
+    collectLotsOfSpans();
+  }
+
+  @Test void collectLotsOfSpans_batched() throws Exception {
+    collector.close();
+    SQSCollector sqsCollector = builder()
+        .awaitStorage(true)
+        .maxBatchSpans(1000)
+        .batchLingerMillis(50)
+        .build();
+    collector = sqsCollector.start();
+
+    collectLotsOfSpans();
+
+    // 910 messages are sent, but storage sees far fewer writes
+    assertThat(sqsCollector.spanBatchCount()).isPositive().isLessThan(910);
+  }
+
+  /** A failed storage write leaves the message in the queue to be received again. */
+  @Test void awaitStorage_doesntDeleteWhenStorageFails() {
+    collector.close();
+    collector = builder()
+        .storage(failingStorage())
+        .awaitStorage(true)
+        .build().start();
+
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(spans)));
+
+    await().atMost(15, TimeUnit.SECONDS).until(() -> metrics.spansDropped() == spans.size());
+    assertThat(sqs.notVisibleCount()).isEqualTo(1);
+  }
+
+  /** Messages only stop counting against the in-flight limit once stored. */
+  @Test void maxInFlightMessages_impliesAwaitStorage() {
+    collector.close();
+    collector = builder()
+        .storage(failingStorage())
+        .maxInFlightMessages(10)
+        .build().start();
+
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(spans)));
+
+    await().atMost(15, TimeUnit.SECONDS).until(() -> metrics.spansDropped() == spans.size());
+    assertThat(sqs.notVisibleCount()).isEqualTo(1); // not deleted
+  }
+
+  /** Storage slower than the visibility timeout shouldn't result in redelivering the message. */
+  @Test void visibilityTimeoutSeconds_extendsWhileStoring() {
+    collector.close();
+    collector = builder()
+        .storage(new StubStorage(store, list -> {
+          try {
+            Thread.sleep(4000L); // twice the visibility timeout
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return store.spanConsumer().accept(list);
+        }))
+        .awaitStorage(true)
+        .visibilityTimeoutSeconds(2)
+        .build().start();
+
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(spans)));
+
+    await().atMost(15, TimeUnit.SECONDS).until(() -> store.acceptedSpanCount() == spans.size());
+    await().atMost(5, TimeUnit.SECONDS).until(() -> sqs.notVisibleCount() == 0);
+    assertThat(metrics.messages()).isEqualTo(1); // not received again by the other processor
+    assertThat(((SQSCollector) collector).visibilityExtensionCount()).isPositive();
+  }
+
+  @Test void collectsFromMultipleQueues() {
+    try (SqsClient client = SqsClient.builder()
+        .httpClient(UrlConnectionHttpClient.create())
+        .endpointOverride(URI.create(sqs.queueUrl()))
+        .region(Region.US_EAST_1)
+        .credentialsProvider(
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("x", "x")))
+        .build()) {
+      String otherQueueUrl = client.createQueue(b -> b.queueName("zipkin-other")).queueUrl();
+      collector.close();
+      collector = builder().addQueueUrl(otherQueueUrl, 2).build().start();
+
+      sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(spans.subList(0, 1)), UTF_8));
+      String otherMessage =
+          new String(SpanBytesEncoder.JSON_V2.encodeList(spans.subList(1, 3)), UTF_8);
+      client.sendMessage(b -> b.queueUrl(otherQueueUrl).messageBody(otherMessage));
+
+      await().atMost(15, TimeUnit.SECONDS).until(() -> store.acceptedSpanCount() == spans.size());
+      assertThat(metrics.messages()).isEqualTo(2);
+    }
+  }
+
+  /** On runtimes older than Java 21, this falls back to platform threads. */
+  @Test void collectLotsOfSpans_virtualThreads() throws Exception {
+    collector.close();
+    collector = builder().virtualThreads(true).pipelined(true).build().start();
+
+    collectLotsOfSpans();
+  }
+
+  /** Senders with compression enabled gzip the encoded spans before base64 encoding them. */
+  @Test void messageWithMultipleSpans_gzip() throws Exception {
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(SpanBytesEncoder.PROTO3.encodeList(spans));
+    }
+    sqs.send(Base64.getEncoder().encodeToString(gzipped.toByteArray()));
+
+    assertSpansAccepted(spans);
+  }
+
+  @Test void messageOffloadedToS3() throws Exception {
+    collector.close();
+    collector = builder().s3EndpointOverride(s3.endpoint()).build().start();
+
+    s3.putObject("zipkin", "json", SpanBytesEncoder.JSON_V2.encodeList(spans));
+    sqs.send(s3Pointer("zipkin", "json"));
+
+    assertSpansAccepted(spans);
+  }
+
+  @Test void messageOffloadedToS3_base64() throws Exception {
+    collector.close();
+    collector = builder().s3EndpointOverride(s3.endpoint()).build().start();
+
+    String base64 = Base64.getEncoder().encodeToString(SpanBytesEncoder.PROTO3.encodeList(spans));
+    s3.putObject("zipkin", "proto3", base64.getBytes(UTF_8));
+    sqs.send(s3Pointer("zipkin", "proto3"));
+
+    assertSpansAccepted(spans);
+  }
+
+  @Test void messageOffloadedToS3_gzip() throws Exception {
+    collector.close();
+    collector = builder().s3EndpointOverride(s3.endpoint()).build().start();
+
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(SpanBytesEncoder.PROTO3.encodeList(spans));
+    }
+    String base64 = Base64.getEncoder().encodeToString(gzipped.toByteArray());
+    s3.putObject("zipkin", "gzip", base64.getBytes(UTF_8));
+    sqs.send(s3Pointer("zipkin", "gzip"));
+
+    assertSpansAccepted(spans);
+  }
+
+  @Test void messageOffloadedToS3_deletedWhenObjectMissing() throws Exception {
+    collector.close();
+    collector = builder().s3EndpointOverride(s3.endpoint()).build().start();
+
+    sqs.send(s3Pointer("zipkin", "expired"));
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(spans), UTF_8));
+
+    await().atMost(15, TimeUnit.SECONDS).until(() -> store.acceptedSpanCount() == spans.size());
+    await().atMost(5, TimeUnit.SECONDS).until(() -> sqs.notVisibleCount() == 0);
+    assertThat(sqs.queueCount()).isZero();
+  }
+
+  static String s3Pointer(String bucket, String key) {
+    return "[\"software.amazon.payloadoffloading.PayloadS3Pointer\",{\"s3BucketName\":\""
+        + bucket + "\",\"s3Key\":\"" + key + "\"}]";
+  }
+
+  /** Autoscaling adds processors for a backlog, and retired ones finish storing what they hold. */
+  @Test void maxParallelism_scalesProcessors() throws Exception {
+    collector.close();
+    CountDownLatch storing = new CountDownLatch(2), stored = new CountDownLatch(1);
+    SQSCollector sqsCollector = builder()
+        .parallelism(1)
+        .maxParallelism(2)
+        .maxNumberOfMessages(1) // so that each processor holds one message
+        .awaitStorage(true)
+        .storage(new StubStorage(store, list -> {
+          storing.countDown();
+          try {
+            stored.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return store.spanConsumer().accept(list);
+        }))
+        .build().start();
+    collector = sqsCollector;
+    SQSAutoscaler autoscaler = new SQSAutoscaler(sqsCollector);
+
+    // Without a receive rate observed yet, a backlog adds one processor per interval
+    await().atMost(15, TimeUnit.SECONDS).until(() -> {
+      autoscaler.scale(1000);
+      return sqsCollector.processors.size() == 2;
+    });
+    SQSSpanProcessor first = sqsCollector.processors.get(0);
+    SQSSpanProcessor added = sqsCollector.processors.get(1);
+
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(List.of(TestObjects.span(1)))));
+    sqs.send(new String(SpanBytesEncoder.JSON_V2.encodeList(List.of(TestObjects.span(2)))));
+    assertThat(storing.await(15, TimeUnit.SECONDS)).isTrue(); // each processor is storing
+
+    // Mostly empty receives retire the most recently added processor
+    sqsCollector.receives.add(10);
+    sqsCollector.emptyReceives.add(10);
+    autoscaler.scale(0);
+
+    assertThat(sqsCollector.processors).containsExactly(first);
+    assertThat(added.stopped()).isTrue();
+
+    stored.countDown();
+
+    await().atMost(15, TimeUnit.SECONDS).until(() -> store.acceptedSpanCount() == 2);
+    await().atMost(5, TimeUnit.SECONDS)
+        .until(() -> sqs.queueCount() == 0 && sqs.notVisibleCount() == 0);
+    assertThat(metrics.messages()).isEqualTo(2); // neither was received again
+  }
+
   @Test void malformedSpansShouldBeDiscarded() {
     sqs.send("[not going to work]");
     sqs.send(new String(SpanBytesEncoder.JSON_V1.encodeList(spans)));
@@ -141,4 +387,30 @@ class ITSQSCollector {
     assertThat(spans).as("some spans have been recorded").containsAll(someSpans);
     assertThat(sqs.queueCount()).as("accepted spans are deleted.").isEqualTo(0);
   }
+
+  /** Storage whose writes always fail, leaving their messages to be received again. */
+  StorageComponent failingStorage() {
+    return new StubStorage(store, list -> Call.create(null).map(v -> {
+      throw new IllegalStateException("storage is down");
+    }));
+  }
+
+  /** Writes spans with the given consumer, otherwise delegating to the in-memory storage. */
+  static final class StubStorage extends ForwardingStorageComponent {
+    final StorageComponent delegate;
+    final SpanConsumer spanConsumer;
+
+    StubStorage(StorageComponent delegate, SpanConsumer spanConsumer) {
+      this.delegate = delegate;
+      this.spanConsumer = spanConsumer;
+    }
+
+    @Override protected StorageComponent delegate() {
+      return delegate;
+    }
+
+    @Override public SpanConsumer spanConsumer() {
+      return spanConsumer;
+    }
+  }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import zipkin2.TestObjects;
+import zipkin2.codec.SpanBytesEncoder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageBodyDecoderTest {
+  MessageBodyDecoder decoder = new MessageBodyDecoder();
+
+  @Test void decode_json() {
+    String json = new String(SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE), UTF_8);
+
+    assertThat(bytes(decoder.decode(json))).isEqualTo(json.getBytes(UTF_8));
+  }
+
+  @Test void decode_jsonUnicode() {
+    String json = "[{\"tags\":{\"error\":\"💩 é\"}}]";
+
+    assertThat(bytes(decoder.decode(json))).isEqualTo(json.getBytes(UTF_8));
+  }
+
+  @Test void decode_base64() {
+    byte[] proto3 = SpanBytesEncoder.PROTO3.encodeList(TestObjects.TRACE);
+
+    assertThat(bytes(decoder.decode(Base64.getEncoder().encodeToString(proto3))))
+        .isEqualTo(proto3);
+  }
+
+  /** Covers each padding length and growing the buffer past its initial capacity */
+  @Test void decode_base64_matchesJdk() {
+    Random random = new Random(1234L);
+    for (int length : new int[] {1, 2, 3, 4, 5, 100, MessageBodyDecoder.INITIAL_CAPACITY * 3}) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      data[0] = 12; // so that the body doesn't look like json
+
+      String padded = Base64.getEncoder().encodeToString(data);
+      String unpadded = Base64.getEncoder().withoutPadding().encodeToString(data);
+      assertThat(bytes(decoder.decode(padded))).isEqualTo(data);
+      assertThat(bytes(decoder.decode(unpadded))).isEqualTo(data);
+    }
+  }
+
+  @Test void decode_reusesBuffer() {
+    ByteBuffer first = decoder.decode("AAAA");
+
+    assertThat(decoder.decode("[]")).isSameAs(first);
+  }
+
+  @Test void decode_base64_illegalCharacter() {
+    assertThatThrownBy(() -> decoder.decode("not base64!"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void decode_base64_truncated() {
+    assertThatThrownBy(() -> decoder.decode("AAAAA"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void decode_gzip() throws IOException {
+    byte[] json = SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE);
+
+    assertThat(bytes(decoder.decode(Base64.getEncoder().encodeToString(gzip(json)))))
+        .isEqualTo(json);
+  }
+
+  /** Compressible data inflates past the initial capacity */
+  @Test void decode_gzip_growsBuffer() throws IOException {
+    byte[] proto3 = SpanBytesEncoder.PROTO3.encodeList(
+        Arrays.asList(TestObjects.LOTS_OF_SPANS).subList(0, 1000));
+
+    assertThat(bytes(decoder.decode(Base64.getEncoder().encodeToString(gzip(proto3)))))
+        .isEqualTo(proto3);
+  }
+
+  @Test void decode_gzip_truncated() throws IOException {
+    byte[] gzipped = gzip(SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE));
+    byte[] truncated = Arrays.copyOf(gzipped, gzipped.length / 2);
+
+    assertThatThrownBy(() -> decoder.decode(Base64.getEncoder().encodeToString(truncated)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void decode_gzip_missingTrailer() throws IOException {
+    byte[] gzipped = gzip(SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE));
+    byte[] truncated = Arrays.copyOf(gzipped, gzipped.length - 8);
+
+    assertThatThrownBy(() -> decoder.decode(Base64.getEncoder().encodeToString(truncated)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("truncated gzip message");
+  }
+
+  @Test void decode_gzip_badCrc() throws IOException {
+    byte[] gzipped = gzip(SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE));
+    gzipped[gzipped.length - 8] ^= 1; // first byte of the CRC32
+
+    assertThatThrownBy(() -> decoder.decode(Base64.getEncoder().encodeToString(gzipped)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("gzip message failed its CRC32 check");
+  }
+
+  @Test void decode_gzip_badSize() throws IOException {
+    byte[] gzipped = gzip(SpanBytesEncoder.JSON_V2.encodeList(TestObjects.TRACE));
+    gzipped[gzipped.length - 4] ^= 1; // first byte of the size
+
+    assertThatThrownBy(() -> decoder.decode(Base64.getEncoder().encodeToString(gzipped)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("gzip message inflated to the wrong size");
+  }
+
+  /** A large message shouldn't leave a large buffer behind on the thread */
+  @Test void decode_large_doesntRetainBuffer() throws IOException {
+    byte[] proto3 = SpanBytesEncoder.PROTO3.encodeList(
+        Arrays.asList(TestObjects.LOTS_OF_SPANS).subList(0, 10_000));
+    assertThat(proto3.length).isGreaterThan(MessageBodyDecoder.MAX_RETAINED_BYTES);
+
+    assertThat(bytes(decoder.decode(Base64.getEncoder().encodeToString(proto3))))
+        .isEqualTo(proto3);
+    assertThat(bytes(decoder.decode(Base64.getEncoder().encodeToString(gzip(proto3)))))
+        .isEqualTo(proto3);
+
+    assertThat(decoder.buffer.length).isLessThanOrEqualTo(MessageBodyDecoder.MAX_RETAINED_BYTES);
+    assertThat(decoder.inflated.length).isLessThanOrEqualTo(MessageBodyDecoder.MAX_RETAINED_BYTES);
+  }
+
+  static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  static byte[] bytes(ByteBuffer buffer) {
+    byte[] result = new byte[buffer.remaining()];
+    buffer.duplicate().get(result);
+    return result;
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.storage.InMemoryStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SQSAutoscalerTest {
+  SQSCollector collector = SQSCollector.newBuilder()
+      .queueUrl("http://localhost:9324/queue/zipkin")
+      .parallelism(2)
+      .maxParallelism(10)
+      .targetDrainSeconds(60)
+      .storage(InMemoryStorage.newBuilder().build())
+      .build();
+  SQSAutoscaler autoscaler = new SQSAutoscaler(collector);
+
+  @AfterEach void close() {
+    collector.close();
+  }
+
+  @Test void growsToDrainBacklogWithinTarget() {
+    // 2 processors received 1200 messages in 10s: 60 messages/second per processor
+    assertThat(autoscaler.desiredParallelism(2, 18000, 20, 0, 1200))
+        .isEqualTo(5); // 18000 / (60 * 60)
+  }
+
+  @Test void growsByOne_whenNoRateObservedYet() {
+    assertThat(autoscaler.desiredParallelism(2, 100, 0, 0, 0)).isEqualTo(3);
+  }
+
+  @Test void neverExceedsMax() {
+    assertThat(autoscaler.desiredParallelism(2, 10_000_000, 20, 0, 1200)).isEqualTo(10);
+  }
+
+  @Test void retiresOne_whenMostReceivesAreEmpty() {
+    assertThat(autoscaler.desiredParallelism(6, 0, 60, 50, 10)).isEqualTo(5);
+  }
+
+  @Test void neverGoesBelowParallelism() {
+    assertThat(autoscaler.desiredParallelism(2, 0, 60, 60, 0)).isEqualTo(2);
+  }
+
+  @Test void keepsCurrent_whenBusyWithoutBacklog() {
+    assertThat(autoscaler.desiredParallelism(4, 0, 40, 0, 400)).isEqualTo(4);
+  }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SQSSpanProcessorTest {
+  @Test void nextBackoff_isJitteredAndCapped() {
+    for (int i = 0; i < 1000; i++) {
+      assertThat(SQSSpanProcessor.nextBackoff(100)).isBetween(100L, 300L);
+      assertThat(SQSSpanProcessor.nextBackoff(20000)).isBetween(100L, 30000L);
+    }
+  }
+}
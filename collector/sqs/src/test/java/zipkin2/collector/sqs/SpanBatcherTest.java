@@ -0,0 +1,96 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.Callback;
+import zipkin2.TestObjects;
+import zipkin2.collector.CollectorMetrics;
+import zipkin2.collector.CollectorSampler;
+import zipkin2.collector.aws.internal.SpanWriter;
+import zipkin2.storage.InMemoryStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpanBatcherTest {
+  InMemoryStorage storage = InMemoryStorage.newBuilder().build();
+  StorageWriter writer = new StorageWriter(
+      new SpanWriter(storage, CollectorSampler.ALWAYS_SAMPLE, CollectorMetrics.NOOP_METRICS), true);
+  ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  List<String> stored = new CopyOnWriteArrayList<>();
+
+  @AfterEach void close() {
+    scheduler.shutdownNow();
+    storage.close();
+  }
+
+  @Test void endOfReceive_writesOnlyThatReceive() {
+    SpanBatcher batcher = new SpanBatcher(writer, scheduler, 100, 0);
+    SpanBatcher.Pending first = batcher.newReceive(), second = batcher.newReceive();
+
+    first.add(List.of(TestObjects.span(1)), callback("1"));
+    second.add(List.of(TestObjects.span(2)), callback("2"));
+    first.endOfReceive();
+
+    assertThat(stored).containsExactly("1");
+    assertThat(storage.acceptedSpanCount()).isEqualTo(1);
+
+    second.endOfReceive();
+
+    assertThat(stored).containsExactly("1", "2");
+    assertThat(batcher.writes.sum()).isEqualTo(2);
+  }
+
+  @Test void fullBatch_writtenImmediately() {
+    SpanBatcher batcher = new SpanBatcher(writer, scheduler, 2, 0);
+    SpanBatcher.Pending receive = batcher.newReceive();
+
+    receive.add(List.of(TestObjects.span(1)), callback("1"));
+    receive.add(List.of(TestObjects.span(2)), callback("2"));
+    receive.add(List.of(TestObjects.span(3)), callback("3"));
+
+    assertThat(stored).containsExactly("1", "2");
+    assertThat(batcher.writes.sum()).isEqualTo(1);
+
+    receive.endOfReceive();
+
+    assertThat(stored).containsExactly("1", "2", "3");
+    assertThat(batcher.writes.sum()).isEqualTo(2);
+  }
+
+  @Test void lingering_sharesBatchAcrossReceives() {
+    SpanBatcher batcher = new SpanBatcher(writer, scheduler, 100, 60_000);
+    SpanBatcher.Pending first = batcher.newReceive(), second = batcher.newReceive();
+
+    first.add(List.of(TestObjects.span(1)), callback("1"));
+    first.endOfReceive();
+    second.add(List.of(TestObjects.span(2)), callback("2"));
+    second.endOfReceive();
+
+    assertThat(stored).isEmpty();
+
+    batcher.flush();
+
+    assertThat(stored).containsExactly("1", "2");
+    assertThat(batcher.writes.sum()).isEqualTo(1);
+  }
+
+  Callback<Void> callback(String name) {
+    return new Callback<>() {
+      @Override public void onSuccess(Void value) {
+        stored.add(name);
+      }
+
+      @Override public void onError(Throwable t) {
+        throw new AssertionError(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.groups.Tuple;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class VisibilityHeartbeatTest {
+  static final String QUEUE_URL = "http://localhost:9324/queue/zipkin";
+
+  ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  List<ChangeMessageVisibilityBatchRequest> requests = new CopyOnWriteArrayList<>();
+  VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(scheduler, request -> {
+    requests.add(request);
+    return CompletableFuture.completedFuture(
+        ChangeMessageVisibilityBatchResponse.builder().build());
+  }, 30, 600);
+
+  @AfterEach void close() {
+    scheduler.shutdownNow();
+  }
+
+  @Test void extendsTrackedMessages() {
+    heartbeat.track(QUEUE_URL, "a");
+    heartbeat.track(QUEUE_URL, "b");
+    heartbeat.untrack(QUEUE_URL, "b");
+
+    heartbeat.extend();
+
+    assertThat(requests).hasSize(1);
+    assertThat(entries(requests.get(0))).containsExactly(tuple("a", 30));
+  }
+
+  @Test void givesBackMessages_heldLongerThanMaxExtension() {
+    heartbeat.track(QUEUE_URL, "a");
+    heartbeat.track(QUEUE_URL, "stuck");
+    heartbeat.tracked.get(QUEUE_URL)
+        .put("stuck", System.nanoTime() - TimeUnit.SECONDS.toNanos(601));
+
+    heartbeat.extend();
+    heartbeat.flushReturns();
+
+    assertThat(requests).hasSize(2);
+    assertThat(entries(requests.get(0))).containsExactly(tuple("a", 30));
+    assertThat(entries(requests.get(1))).containsExactly(tuple("stuck", 0));
+    assertThat(heartbeat.tracked.get(QUEUE_URL)).containsOnlyKeys("a");
+
+    heartbeat.extend(); // the stuck message is no longer extended
+
+    assertThat(requests).hasSize(3);
+    assertThat(entries(requests.get(2))).containsExactly(tuple("a", 30));
+  }
+
+  @Test void untrack_falseOnceGivenBack() {
+    heartbeat.track(QUEUE_URL, "stored");
+    heartbeat.track(QUEUE_URL, "stuck");
+    heartbeat.tracked.get(QUEUE_URL)
+        .put("stuck", System.nanoTime() - TimeUnit.SECONDS.toNanos(601));
+
+    heartbeat.extend();
+
+    assertThat(heartbeat.untrack(QUEUE_URL, "stored")).isTrue();
+    assertThat(heartbeat.untrack(QUEUE_URL, "stuck")).isFalse();
+  }
+
+  static List<Tuple> entries(ChangeMessageVisibilityBatchRequest request) {
+    return request.entries().stream()
+        .map(e -> tuple(e.receiptHandle(), e.visibilityTimeout()))
+        .toList();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.sqs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WeightedQueuesTest {
+  WeightedQueues queues = queues("a", 3, "b", 1);
+
+  @Test void receivesInProportionToWeight() {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    for (int i = 0; i < 400; i++) {
+      WeightedQueues.Queue queue = queues.next();
+      counts.merge(queue.url, 1, Integer::sum);
+      queues.done(queue, 10);
+    }
+
+    assertThat(counts).containsEntry("a", 300).containsEntry("b", 100);
+  }
+
+  @Test void interleavesInsteadOfBursts() {
+    StringBuilder order = new StringBuilder();
+    for (int i = 0; i < 4; i++) {
+      WeightedQueues.Queue queue = queues.next();
+      order.append(queue.url);
+      queues.done(queue, 10);
+    }
+
+    assertThat(order).hasToString("aaba");
+  }
+
+  @Test void idleQueue_onlyPolledByOneProcessor() {
+    WeightedQueues.Queue b = null;
+    while (b == null) { // mark b idle
+      WeightedQueues.Queue queue = queues.next();
+      if (queue.url.equals("b")) b = queue;
+      queues.done(queue, queue == b ? 0 : 10);
+    }
+
+    WeightedQueues.Queue polling = null;
+    for (int i = 0; i < 10 && polling == null; i++) { // outstanding poll of idle b
+      WeightedQueues.Queue queue = queues.next();
+      if (queue.url.equals("b")) polling = queue;
+    }
+    assertThat(polling).isNotNull();
+
+    for (int i = 0; i < 10; i++) { // other processors go to the busy queue
+      assertThat(queues.next().url).isEqualTo("a");
+    }
+  }
+
+  @Test void allIdleAndPolled_stillReturnsAQueue() {
+    WeightedQueues single = queues("a", 1);
+    single.done(single.next(), 0);
+    single.next();
+
+    assertThat(single.next().url).isEqualTo("a");
+  }
+
+  @Test void failedReceive_keepsIdleState() {
+    WeightedQueues single = queues("a", 1);
+    WeightedQueues.Queue queue = single.next();
+    single.done(queue, -1);
+
+    assertThat(queue.idle).isFalse();
+    assertThat(queue.polling).isZero();
+  }
+
+  static WeightedQueues queues(Object... urlsAndWeights) {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (int i = 0; i < urlsAndWeights.length; i += 2) {
+      weights.put((String) urlsAndWeights[i], (Integer) urlsAndWeights[i + 1]);
+    }
+    return new WeightedQueues(weights, ReceiveMessageRequest.builder().build());
+  }
+}
@@ -4,6 +4,12 @@
  */
 package zipkin.module.aws.kinesis;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
 import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -31,18 +37,76 @@ class ZipkinKinesisCollectorModule {
       AwsCredentialsProvider credentialsProvider,
       CollectorSampler sampler,
       CollectorMetrics metrics,
-      StorageComponent storage) {
-    return KinesisCollector.newBuilder()
+      StorageComponent storage,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    KinesisCollector.Builder builder = KinesisCollector.newBuilder()
         .credentialsProvider(credentialsProvider)
         .sampler(sampler)
         .metrics(metrics)
         .storage(storage)
-        .streamName(properties.getStreamName())
+        .streamNames(ZipkinKinesisCollectorProperties.streamNames(properties.getStreamName()))
         .appName(properties.getAppName())
         .regionName(properties.getAwsKinesisRegion() != null
             ? properties.getAwsKinesisRegion() : properties.getAwsRegion())
-        .build()
-        .start();
+        .maxInFlightBytes(properties.getMaxInFlightBytes())
+        .maxBytesPerSecondPerShard(properties.getMaxBytesPerSecondPerShard())
+        .enhancedFanOut(properties.isEnhancedFanOut())
+        .maxRecords(properties.getMaxRecords())
+        .idleTimeBetweenReadsMillis(properties.getIdleTimeBetweenReadsMillis())
+        .maxLeasesForWorker(properties.getMaxLeasesForWorker())
+        .workerId(properties.getWorkerId())
+        .failoverTimeMillis(properties.getFailoverTimeMillis())
+        .maxLeasesToStealAtOneTime(properties.getMaxLeasesToStealAtOneTime())
+        .gracefulShutdownTimeoutMillis(properties.getGracefulShutdownTimeoutMillis())
+        .checkpointIntervalMillis(properties.getCheckpointIntervalMillis())
+        .cloudWatchMetrics(properties.isCloudWatchMetrics())
+        .maxMillisBehindLatest(properties.getMaxMillisBehindLatest());
+    if (properties.getProcessingThreads() != null) {
+      builder.processingThreads(properties.getProcessingThreads());
+    }
+    KinesisCollector collector = builder.build().start();
+    meterRegistry.ifAvailable(registry -> bindMetrics(registry, collector));
+    return collector;
+  }
+
+  static void bindMetrics(MeterRegistry registry, KinesisCollector collector) {
+    FunctionCounter.builder("zipkin_collector.throttled", collector,
+            c -> c.throttledNanos() / 1e9)
+        .description("Time shard processing was paused waiting for records to be stored")
+        .baseUnit("seconds")
+        .tag("transport", "kinesis")
+        .register(registry);
+    Gauge.builder("zipkin_collector.leases", collector, KinesisCollector::leaseCount)
+        .description("Shards this collector currently processes")
+        .tag("transport", "kinesis")
+        .register(registry);
+    Gauge.builder("zipkin_collector.millis_behind_latest", collector,
+            KinesisCollector::millisBehindLatest)
+        .description("How far the most behind shard is from the tip of the stream")
+        .baseUnit("milliseconds")
+        .tag("transport", "kinesis")
+        .register(registry);
+    FunctionTimer.builder("zipkin_collector.process_batches", collector,
+            KinesisCollector::processBatchCount, KinesisCollector::processLatencyNanos,
+            TimeUnit.NANOSECONDS)
+        .description("Record batches decoded and submitted to storage")
+        .tag("transport", "kinesis")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.process_records", collector,
+            KinesisCollector::processRecordCount)
+        .description("Records in processed batches")
+        .tag("transport", "kinesis")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.rate_limited", collector,
+            KinesisCollector::rateLimitedRecordCount)
+        .description("Records dropped as their shard exceeded the max bytes per second")
+        .tag("transport", "kinesis")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.store_retries", collector,
+            KinesisCollector::storeRetryCount)
+        .description("Failed storage writes retried, holding back the checkpoint of their shard")
+        .tag("transport", "kinesis")
+        .register(registry);
   }
 
   static final class KinesisSetCondition extends SpringBootCondition {
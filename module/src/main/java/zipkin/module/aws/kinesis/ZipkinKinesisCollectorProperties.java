@@ -4,6 +4,8 @@
  */
 package zipkin.module.aws.kinesis;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties("zipkin.collector.kinesis")
@@ -19,6 +21,20 @@ class ZipkinKinesisCollectorProperties {
   String awsStsRegion;
   String awsKinesisRegion;
   String awsRegion = DEFAULT_AWS_REGION;
+  int maxInFlightBytes = 64 * 1024 * 1024;
+  int maxBytesPerSecondPerShard;
+  boolean enhancedFanOut = true;
+  int maxRecords;
+  long idleTimeBetweenReadsMillis;
+  Integer processingThreads; // null uses the collector's default
+  int maxLeasesForWorker;
+  String workerId;
+  long failoverTimeMillis;
+  int maxLeasesToStealAtOneTime;
+  long gracefulShutdownTimeoutMillis = 20_000;
+  long checkpointIntervalMillis = 10_000;
+  boolean cloudWatchMetrics = true;
+  long maxMillisBehindLatest;
 
   public String getStreamName() {
     return streamName;
@@ -83,4 +99,126 @@ class ZipkinKinesisCollectorProperties {
   public void setAwsRegion(String awsRegion) {
     this.awsRegion = awsRegion;
   }
+
+  public int getMaxInFlightBytes() {
+    return maxInFlightBytes;
+  }
+
+  public void setMaxInFlightBytes(int maxInFlightBytes) {
+    this.maxInFlightBytes = maxInFlightBytes;
+  }
+
+  public int getMaxBytesPerSecondPerShard() {
+    return maxBytesPerSecondPerShard;
+  }
+
+  public void setMaxBytesPerSecondPerShard(int maxBytesPerSecondPerShard) {
+    this.maxBytesPerSecondPerShard = maxBytesPerSecondPerShard;
+  }
+
+  public boolean isEnhancedFanOut() {
+    return enhancedFanOut;
+  }
+
+  public void setEnhancedFanOut(boolean enhancedFanOut) {
+    this.enhancedFanOut = enhancedFanOut;
+  }
+
+  public int getMaxRecords() {
+    return maxRecords;
+  }
+
+  public void setMaxRecords(int maxRecords) {
+    this.maxRecords = maxRecords;
+  }
+
+  public long getIdleTimeBetweenReadsMillis() {
+    return idleTimeBetweenReadsMillis;
+  }
+
+  public void setIdleTimeBetweenReadsMillis(long idleTimeBetweenReadsMillis) {
+    this.idleTimeBetweenReadsMillis = idleTimeBetweenReadsMillis;
+  }
+
+  public Integer getProcessingThreads() {
+    return processingThreads;
+  }
+
+  public void setProcessingThreads(Integer processingThreads) {
+    this.processingThreads = processingThreads;
+  }
+
+  public int getMaxLeasesForWorker() {
+    return maxLeasesForWorker;
+  }
+
+  public void setMaxLeasesForWorker(int maxLeasesForWorker) {
+    this.maxLeasesForWorker = maxLeasesForWorker;
+  }
+
+  public String getWorkerId() {
+    return workerId;
+  }
+
+  public void setWorkerId(String workerId) {
+    this.workerId = "".equals(workerId) ? null : workerId;
+  }
+
+  public long getFailoverTimeMillis() {
+    return failoverTimeMillis;
+  }
+
+  public void setFailoverTimeMillis(long failoverTimeMillis) {
+    this.failoverTimeMillis = failoverTimeMillis;
+  }
+
+  public int getMaxLeasesToStealAtOneTime() {
+    return maxLeasesToStealAtOneTime;
+  }
+
+  public void setMaxLeasesToStealAtOneTime(int maxLeasesToStealAtOneTime) {
+    this.maxLeasesToStealAtOneTime = maxLeasesToStealAtOneTime;
+  }
+
+  public long getGracefulShutdownTimeoutMillis() {
+    return gracefulShutdownTimeoutMillis;
+  }
+
+  public void setGracefulShutdownTimeoutMillis(long gracefulShutdownTimeoutMillis) {
+    this.gracefulShutdownTimeoutMillis = gracefulShutdownTimeoutMillis;
+  }
+
+  public long getCheckpointIntervalMillis() {
+    return checkpointIntervalMillis;
+  }
+
+  public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+    this.checkpointIntervalMillis = checkpointIntervalMillis;
+  }
+
+  public boolean isCloudWatchMetrics() {
+    return cloudWatchMetrics;
+  }
+
+  public void setCloudWatchMetrics(boolean cloudWatchMetrics) {
+    this.cloudWatchMetrics = cloudWatchMetrics;
+  }
+
+  public long getMaxMillisBehindLatest() {
+    return maxMillisBehindLatest;
+  }
+
+  public void setMaxMillisBehindLatest(long maxMillisBehindLatest) {
+    this.maxMillisBehindLatest = maxMillisBehindLatest;
+  }
+
+  /** Splits a comma-separated list of stream names, consumed together in multi-stream mode. */
+  static List<String> streamNames(String streamName) {
+    List<String> result = new ArrayList<>();
+    for (String entry : streamName.split(",", -1)) {
+      entry = entry.trim();
+      if (!entry.isEmpty()) result.add(entry);
+    }
+    return result;
+  }
 }
@@ -4,6 +4,11 @@
  */
 package zipkin.module.aws.sqs;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
 import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
@@ -33,10 +38,10 @@ class ZipkinSQSCollectorModule {
       AwsCredentialsProvider credentialsProvider,
       CollectorSampler sampler,
       CollectorMetrics metrics,
-      StorageComponent storage) {
-    return properties
+      StorageComponent storage,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    SQSCollector collector = properties
         .toBuilder()
-        .queueUrl(properties.getQueueUrl())
         .waitTimeSeconds(properties.getWaitTimeSeconds())
         .parallelism(properties.getParallelism())
         .credentialsProvider(credentialsProvider)
@@ -45,6 +50,43 @@ class ZipkinSQSCollectorModule {
         .storage(storage)
         .build()
         .start();
+    meterRegistry.ifAvailable(registry -> bindMetrics(registry, collector));
+    return collector;
+  }
+
+  static void bindMetrics(MeterRegistry registry, SQSCollector collector) {
+    FunctionTimer.builder("zipkin_collector.deletes", collector,
+            SQSCollector::deleteRequestCount, SQSCollector::deleteLatencyNanos,
+            TimeUnit.NANOSECONDS)
+        .description("DeleteMessageBatch requests sent to acknowledge messages")
+        .tag("transport", "sqs")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.deletes_failed", collector,
+            SQSCollector::deleteFailureCount)
+        .description("Messages that failed to delete, including those later retried")
+        .tag("transport", "sqs")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.throttled", collector,
+            c -> c.throttledNanos() / 1e9)
+        .description("Time receiving was paused waiting for messages to be stored")
+        .baseUnit("seconds")
+        .tag("transport", "sqs")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.visibility_extensions", collector,
+            SQSCollector::visibilityExtensionCount)
+        .description("Messages whose visibility timeout was extended while awaiting storage")
+        .tag("transport", "sqs")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.visibility_returns", collector,
+            SQSCollector::visibilityReturnCount)
+        .description("Messages made visible again after their storage failed")
+        .tag("transport", "sqs")
+        .register(registry);
+    FunctionCounter.builder("zipkin_collector.span_batches", collector,
+            SQSCollector::spanBatchCount)
+        .description("Storage writes of spans merged from several messages")
+        .tag("transport", "sqs")
+        .register(registry);
   }
 
   /**
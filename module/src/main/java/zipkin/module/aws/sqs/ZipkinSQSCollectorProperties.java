@@ -4,6 +4,7 @@
  */
 package zipkin.module.aws.sqs;
 
+import java.net.URI;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import zipkin2.collector.sqs.SQSCollector;
 
@@ -13,6 +14,19 @@ final class ZipkinSQSCollectorProperties {
   int waitTimeSeconds = 20;
   int parallelism = 1;
   int maxNumberOfMessages = 10;
+  boolean pipelined;
+  boolean asyncClient;
+  int maxInFlightMessages;
+  boolean awaitStorage;
+  int visibilityTimeoutSeconds;
+  int maxVisibilityExtensionSeconds = 600;
+  boolean virtualThreads;
+  int maxParallelism;
+  int targetDrainSeconds = 60;
+  int maxBatchSpans;
+  int batchLingerMillis;
+  String endpointOverride;
+  String s3EndpointOverride;
   String awsAccessKeyId;
   String awsSecretAccessKey;
   String awsStsRoleArn;
@@ -50,6 +64,110 @@ final class ZipkinSQSCollectorProperties {
     return parallelism;
   }
 
+  public void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
+  public boolean isPipelined() {
+    return pipelined;
+  }
+
+  public void setAsyncClient(boolean asyncClient) {
+    this.asyncClient = asyncClient;
+  }
+
+  public boolean isAsyncClient() {
+    return asyncClient;
+  }
+
+  public void setMaxInFlightMessages(int maxInFlightMessages) {
+    this.maxInFlightMessages = maxInFlightMessages;
+  }
+
+  public int getMaxInFlightMessages() {
+    return maxInFlightMessages;
+  }
+
+  public void setAwaitStorage(boolean awaitStorage) {
+    this.awaitStorage = awaitStorage;
+  }
+
+  public boolean isAwaitStorage() {
+    return awaitStorage;
+  }
+
+  public void setVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+    this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+  }
+
+  public int getVisibilityTimeoutSeconds() {
+    return visibilityTimeoutSeconds;
+  }
+
+  public void setMaxVisibilityExtensionSeconds(int maxVisibilityExtensionSeconds) {
+    this.maxVisibilityExtensionSeconds = maxVisibilityExtensionSeconds;
+  }
+
+  public int getMaxVisibilityExtensionSeconds() {
+    return maxVisibilityExtensionSeconds;
+  }
+
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public void setMaxParallelism(int maxParallelism) {
+    this.maxParallelism = maxParallelism;
+  }
+
+  public int getMaxParallelism() {
+    return maxParallelism;
+  }
+
+  public void setTargetDrainSeconds(int targetDrainSeconds) {
+    this.targetDrainSeconds = targetDrainSeconds;
+  }
+
+  public int getTargetDrainSeconds() {
+    return targetDrainSeconds;
+  }
+
+  public void setMaxBatchSpans(int maxBatchSpans) {
+    this.maxBatchSpans = maxBatchSpans;
+  }
+
+  public int getMaxBatchSpans() {
+    return maxBatchSpans;
+  }
+
+  public void setBatchLingerMillis(int batchLingerMillis) {
+    this.batchLingerMillis = batchLingerMillis;
+  }
+
+  public int getBatchLingerMillis() {
+    return batchLingerMillis;
+  }
+
+  public void setEndpointOverride(String endpointOverride) {
+    this.endpointOverride = endpointOverride;
+  }
+
+  public String getEndpointOverride() {
+    return endpointOverride;
+  }
+
+  public void setS3EndpointOverride(String s3EndpointOverride) {
+    this.s3EndpointOverride = s3EndpointOverride;
+  }
+
+  public String getS3EndpointOverride() {
+    return s3EndpointOverride;
+  }
+
   public void setAwsAccessKeyId(String awsAccessKeyId) {
     this.awsAccessKeyId = awsAccessKeyId;
   }
@@ -83,10 +201,58 @@ final class ZipkinSQSCollectorProperties {
   }
 
   public SQSCollector.Builder toBuilder() {
-    return SQSCollector.newBuilder()
-        .queueUrl(queueUrl)
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+    addQueueUrls(builder, queueUrl);
+    if (!isEmpty(endpointOverride)) builder.endpointOverride(URI.create(endpointOverride));
+    if (!isEmpty(s3EndpointOverride)) builder.s3EndpointOverride(URI.create(s3EndpointOverride));
+    return builder
         .parallelism(parallelism)
         .waitTimeSeconds(waitTimeSeconds)
-        .maxNumberOfMessages(maxNumberOfMessages);
+        .maxNumberOfMessages(maxNumberOfMessages)
+        .pipelined(pipelined)
+        .asyncClient(asyncClient)
+        .maxInFlightMessages(maxInFlightMessages)
+        .awaitStorage(awaitStorage)
+        .visibilityTimeoutSeconds(visibilityTimeoutSeconds)
+        .maxVisibilityExtensionSeconds(maxVisibilityExtensionSeconds)
+        .virtualThreads(virtualThreads)
+        .maxParallelism(maxParallelism)
+        .targetDrainSeconds(targetDrainSeconds)
+        .maxBatchSpans(maxBatchSpans)
+        .batchLingerMillis(batchLingerMillis);
+  }
+
+  /**
+   * Adds each entry of a comma-separated list of queue URLs. An entry may end with {@code =weight}
+   * to receive from it more often than others, which default to a weight of 1.
+   *
+   * @throws IllegalArgumentException if a weight isn't a positive integer
+   */
+  static void addQueueUrls(SQSCollector.Builder builder, String queueUrls) {
+    if (queueUrls == null || queueUrls.isEmpty()) return;
+    for (String entry : queueUrls.split(",", -1)) {
+      entry = entry.trim();
+      if (entry.isEmpty()) continue;
+      int weight = 1, equals = entry.lastIndexOf('='); // SQS queue URLs don't include '='
+      if (equals != -1) {
+        weight = parseWeight(entry, entry.substring(equals + 1).trim());
+        entry = entry.substring(0, equals).trim();
+      }
+      builder.addQueueUrl(entry, weight);
+    }
+  }
+
+  static boolean isEmpty(String s) {
+    return s == null || s.isEmpty();
+  }
+
+  static int parseWeight(String entry, String weight) {
+    int result = 0;
+    if (weight.matches("[0-9]{1,9}")) result = Integer.parseInt(weight);
+    if (result < 1) {
+      throw new IllegalArgumentException(
+          "Invalid SQS queue URL entry " + entry + ": weight must be a positive integer");
+    }
+    return result;
   }
 }
@@ -4,6 +4,9 @@
  */
 package zipkin.module.aws.kinesis;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -111,6 +114,203 @@ class ZipkinKinesisCollectorModuleTest {
         .isEqualTo("us-east-1");
   }
 
+  @Test void kinesisCollectorConfiguredForPolling() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.enhanced-fan-out: false",
+        "zipkin.collector.kinesis.max-records: 500",
+        "zipkin.collector.kinesis.idle-time-between-reads-millis: 250")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("enhancedFanOut", "maxRecords", "idleTimeBetweenReadsMillis")
+        .containsExactly(false, 500, 250L);
+  }
+
+  @Test void kinesisCollectorConfiguredWithShardConcurrency() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.processing-threads: 8",
+        "zipkin.collector.kinesis.max-leases-for-worker: 32")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("processingThreads", "maxLeasesForWorker")
+        .containsExactly(8, 32);
+  }
+
+  @Test void kinesisCollectorBoundsProcessingThreadsByDefault() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("processingThreads")
+        .isEqualTo(Math.max(2, Runtime.getRuntime().availableProcessors()));
+  }
+
+  @Test void kinesisCollectorConfiguredWithMultipleStreams() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-prod, zipkin-staging",
+        "zipkin.collector.kinesis.app-name: zipkin")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("streamNames")
+        .isEqualTo(List.of("zipkin-prod", "zipkin-staging"));
+  }
+
+  @Test void kinesisCollectorConfiguredWithLeaseManagement() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.worker-id: zipkin-0",
+        "zipkin.collector.kinesis.failover-time-millis: 5000",
+        "zipkin.collector.kinesis.max-leases-to-steal-at-one-time: 4",
+        "zipkin.collector.kinesis.graceful-shutdown-timeout-millis: 30000")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("workerId", "failoverTimeMillis", "maxLeasesToStealAtOneTime",
+            "gracefulShutdownTimeoutMillis")
+        .containsExactly("zipkin-0", 5000L, 4, 30000L);
+  }
+
+  @Test void kinesisCollectorConfiguredWithMaxBytesPerSecondPerShard() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.max-bytes-per-second-per-shard: 262144")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("maxBytesPerSecondPerShard")
+        .isEqualTo(262144);
+  }
+
+  @Test void kinesisCollectorConfiguredWithMaxMillisBehindLatest() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.max-millis-behind-latest: 60000")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("maxMillisBehindLatest")
+        .isEqualTo(60000L);
+  }
+
+  @Test void kinesisCollectorConfiguredWithoutCloudWatchMetrics() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin",
+        "zipkin.collector.kinesis.cloud-watch-metrics: false")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class);
+    context.refresh();
+
+    KinesisCollector collector = context.getBean(KinesisCollector.class);
+
+    assertThat(collector)
+        .extracting("cloudWatchMetrics")
+        .isEqualTo(false);
+  }
+
+  @Test void bindsShardMetrics_whenMeterRegistryIsPresent() {
+    TestPropertyValues.of(
+        "zipkin.collector.kinesis.stream-name: zipkin-test",
+        "zipkin.collector.kinesis.app-name: zipkin")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinKinesisCollectorModule.class,
+        ZipkinKinesisCredentialsConfiguration.class,
+        InMemoryConfiguration.class,
+        MeterRegistryConfiguration.class);
+    context.refresh();
+
+    MeterRegistry registry = context.getBean(MeterRegistry.class);
+    assertThat(registry.find("zipkin_collector.leases").tag("transport", "kinesis").gauge())
+        .isNotNull();
+    assertThat(registry.find("zipkin_collector.millis_behind_latest").gauge())
+        .isNotNull();
+    assertThat(registry.find("zipkin_collector.process_batches").functionTimer())
+        .isNotNull();
+    assertThat(registry.find("zipkin_collector.process_records").functionCounter())
+        .isNotNull();
+  }
+
+  @Configuration
+  static class MeterRegistryConfiguration {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
   @Configuration
   static class InMemoryConfiguration {
     @Bean
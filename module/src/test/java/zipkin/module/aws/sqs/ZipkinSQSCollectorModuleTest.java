@@ -4,6 +4,10 @@
  */
 package zipkin.module.aws.sqs;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -25,7 +29,10 @@ import zipkin2.storage.StorageComponent;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static zipkin.module.aws.sqs.ZipkinSQSCollectorProperties.addQueueUrls;
 
 class ZipkinSQSCollectorModuleTest {
   @RegisterExtension AmazonSQSExtension sqs = new AmazonSQSExtension();
@@ -94,6 +101,73 @@ class ZipkinSQSCollectorModuleTest {
     assertThat(properties.getParallelism()).isEqualTo(3);
   }
 
+  @Test void toBuilder_setsEndpointOverrides() {
+    ZipkinSQSCollectorProperties properties = new ZipkinSQSCollectorProperties();
+    properties.setEndpointOverride("http://localhost:4566");
+    properties.setS3EndpointOverride("http://localhost:4567");
+
+    assertThat(properties.toBuilder())
+        .hasFieldOrPropertyWithValue("endpointOverride", URI.create("http://localhost:4566"))
+        .hasFieldOrPropertyWithValue("s3EndpointOverride", URI.create("http://localhost:4567"));
+  }
+
+  @Test void toBuilder_ignoresEmptyEndpointOverrides() {
+    ZipkinSQSCollectorProperties properties = new ZipkinSQSCollectorProperties();
+    properties.setEndpointOverride("");
+    properties.setS3EndpointOverride("");
+
+    assertThat(properties.toBuilder())
+        .hasFieldOrPropertyWithValue("endpointOverride", null)
+        .hasFieldOrPropertyWithValue("s3EndpointOverride", null);
+  }
+
+  @Test void addQueueUrls_weighted() {
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+    addQueueUrls(builder, "https://sqs/1/busy=3,https://sqs/1/quiet");
+
+    assertThat(builder).extracting("queueWeights")
+        .asInstanceOf(InstanceOfAssertFactories.MAP)
+        .containsExactly(entry("https://sqs/1/busy", 3), entry("https://sqs/1/quiet", 1));
+  }
+
+  @Test void addQueueUrls_unweighted() {
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+    addQueueUrls(builder, "https://sqs/1/a,https://sqs/1/b");
+
+    assertThat(builder).extracting("queueWeights")
+        .asInstanceOf(InstanceOfAssertFactories.MAP)
+        .containsExactly(entry("https://sqs/1/a", 1), entry("https://sqs/1/b", 1));
+  }
+
+  @Test void addQueueUrls_trimsWhitespace() {
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+    addQueueUrls(builder, " https://sqs/1/a = 2 , https://sqs/1/b ,");
+
+    assertThat(builder).extracting("queueWeights")
+        .asInstanceOf(InstanceOfAssertFactories.MAP)
+        .containsExactly(entry("https://sqs/1/a", 2), entry("https://sqs/1/b", 1));
+  }
+
+  @Test void addQueueUrls_malformedWeight() {
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+
+    assertThatThrownBy(() -> addQueueUrls(builder, "https://sqs/1/a=x"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(
+            "Invalid SQS queue URL entry https://sqs/1/a=x: weight must be a positive integer");
+  }
+
+  @Test void addQueueUrls_nonPositiveWeight() {
+    SQSCollector.Builder builder = SQSCollector.newBuilder();
+
+    assertThatThrownBy(() -> addQueueUrls(builder, "https://sqs/1/a=0"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("weight must be a positive integer");
+    assertThatThrownBy(() -> addQueueUrls(builder, "https://sqs/1/a=-2"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("weight must be a positive integer");
+  }
+
   @Test void provideSecurityTokenService_whenAwsStsRoleArnIsSet() {
     context = new AnnotationConfigApplicationContext();
     TestPropertyValues.of(
@@ -120,6 +194,37 @@ class ZipkinSQSCollectorModuleTest {
         .isInstanceOf(StsAssumeRoleCredentialsProvider.class);
   }
 
+  @Test void bindsDeleteMetrics_whenMeterRegistryIsPresent() {
+    context = new AnnotationConfigApplicationContext();
+    TestPropertyValues.of(
+        "zipkin.collector.sqs.queue-url:" + sqs.queueUrl(),
+        "zipkin.collector.sqs.wait-time-seconds:1",
+        "zipkin.collector.sqs.aws-access-key-id: x",
+        "zipkin.collector.sqs.aws-secret-access-key: x")
+        .applyTo(context);
+    context.register(
+        PropertyPlaceholderAutoConfiguration.class,
+        ZipkinSQSCollectorModule.class,
+        ZipkinSQSCredentialsConfiguration.class,
+        InMemoryConfiguration.class,
+        MeterRegistryConfiguration.class);
+    context.refresh();
+
+    MeterRegistry registry = context.getBean(MeterRegistry.class);
+    assertThat(registry.find("zipkin_collector.deletes").tag("transport", "sqs").functionTimer())
+        .isNotNull();
+    assertThat(registry.find("zipkin_collector.deletes_failed").functionCounter())
+        .isNotNull();
+  }
+
+  @Configuration
+  static class MeterRegistryConfiguration {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
   @Configuration
   static class InMemoryConfiguration {
     @Bean
@@ -4,18 +4,19 @@
  */
 package zipkin2.reporter.awssdk.kinesis;
 
-import java.net.InetAddress;
 import java.net.URI;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.KinesisClientBuilder;
 import software.amazon.awssdk.services.kinesis.model.PutRecordRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
 import zipkin2.reporter.BytesMessageEncoder;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.ClosedSenderException;
@@ -23,6 +24,9 @@ import zipkin2.reporter.Encoding;
 import zipkin2.reporter.internal.Nullable;
 
 public final class KinesisSender extends BytesMessageSender.Base {
+  // PutRecords attempts after the first, retrying only records that failed
+  static final int MAX_PUT_RECORDS_RETRIES = 3;
+  static final long RETRY_BACKOFF_MILLIS = 100;
 
   public static KinesisSender create(String streamName) {
     return newBuilder().streamName(streamName).build();
@@ -39,6 +43,8 @@ public final class KinesisSender extends BytesMessageSender.Base {
     KinesisClient kinesisClient;
     int messageMaxBytes = 1024 * 1024; // 1MB Kinesis limit.
     Encoding encoding = Encoding.JSON;
+    PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.HOSTNAME;
+    int recordsPerSend = 1;
 
     Builder(KinesisSender sender) {
       this.streamName = sender.streamName;
@@ -48,6 +54,8 @@ public final class KinesisSender extends BytesMessageSender.Base {
       this.kinesisClient = sender.providedClient;
       this.messageMaxBytes = sender.messageMaxBytes;
       this.encoding = sender.encoding;
+      this.partitionKeyStrategy = sender.partitioner.strategy;
+      this.recordsPerSend = sender.partitioner.recordsPerSend;
     }
 
     /** Kinesis stream to send spans. */
@@ -105,6 +113,32 @@ public final class KinesisSender extends BytesMessageSender.Base {
       return this;
     }
 
+    /**
+     * How each record chooses its shard. Defaults to {@link PartitionKeyStrategy#HOSTNAME}, which
+     * limits this host to the 1MB/s write throughput of one shard.
+     */
+    public Builder partitionKeyStrategy(PartitionKeyStrategy partitionKeyStrategy) {
+      if (partitionKeyStrategy == null) {
+        throw new NullPointerException("partitionKeyStrategy == null");
+      }
+      this.partitionKeyStrategy = partitionKeyStrategy;
+      return this;
+    }
+
+    /**
+     * Splits the spans of each message into up to this many records, sent together with
+     * PutRecords, which only retries the records that failed. With a {@link
+     * #partitionKeyStrategy(PartitionKeyStrategy) strategy} other than the host name, the records
+     * of a message go to different shards. Defaults to 1, which sends each message with PutRecord.
+     */
+    public Builder recordsPerSend(int recordsPerSend) {
+      if (recordsPerSend < 1 || recordsPerSend > 500) {
+        throw new IllegalArgumentException("recordsPerSend must be between 1 and 500");
+      }
+      this.recordsPerSend = recordsPerSend;
+      return this;
+    }
+
     public KinesisSender build() {
       if (streamName == null) throw new NullPointerException("streamName == null");
       return new KinesisSender(this);
@@ -124,6 +158,7 @@ public final class KinesisSender extends BytesMessageSender.Base {
   @Nullable final URI endpointOverride;
   @Nullable final KinesisClient providedClient;
   final int messageMaxBytes;
+  final Partitioner partitioner;
 
   KinesisSender(Builder builder) {
     super(builder.encoding);
@@ -133,19 +168,7 @@ public final class KinesisSender extends BytesMessageSender.Base {
     this.endpointOverride = builder.endpointOverride;
     this.providedClient = builder.kinesisClient;
     this.messageMaxBytes = builder.messageMaxBytes;
-  }
-
-  private final AtomicReference<String> partitionKey = new AtomicReference<>("");
-
-  private String getPartitionKey() {
-    if (partitionKey.get().isEmpty()) {
-      try {
-        partitionKey.set(InetAddress.getLocalHost().getHostName());
-      } catch (UnknownHostException e) {
-        partitionKey.set(UUID.randomUUID().toString());
-      }
-    }
-    return partitionKey.get();
+    this.partitioner = new Partitioner(builder.partitionKeyStrategy, builder.recordsPerSend);
   }
 
   /** get and close are typically called from different threads */
@@ -177,13 +200,61 @@ public final class KinesisSender extends BytesMessageSender.Base {
   @Override public void send(List<byte[]> list) {
     if (closeCalled) throw new ClosedSenderException();
 
-    byte[] message = BytesMessageEncoder.forEncoding(encoding()).encode(list);
+    BytesMessageEncoder encoder = BytesMessageEncoder.forEncoding(encoding());
+    List<Partitioner.Record> records = partitioner.partition(list);
+    if (partitioner.recordsPerSend == 1) {
+      Partitioner.Record record = records.get(0);
+      get().putRecord(PutRecordRequest.builder()
+          .streamName(streamName)
+          .data(SdkBytes.fromByteArray(encoder.encode(record.spans)))
+          .partitionKey(record.partitionKey)
+          .explicitHashKey(record.explicitHashKey)
+          .build());
+      return;
+    }
+
+    List<PutRecordsRequestEntry> entries = new ArrayList<>(records.size());
+    for (Partitioner.Record record : records) {
+      entries.add(PutRecordsRequestEntry.builder()
+          .data(SdkBytes.fromByteArray(encoder.encode(record.spans)))
+          .partitionKey(record.partitionKey)
+          .explicitHashKey(record.explicitHashKey)
+          .build());
+    }
+    putRecords(entries);
+  }
+
+  /** Retries records that fail, such as when their shard is over its write limit. */
+  void putRecords(List<PutRecordsRequestEntry> entries) {
+    for (int retry = 0; ; retry++) {
+      PutRecordsResponse response = get().putRecords(PutRecordsRequest.builder()
+          .streamName(streamName)
+          .records(entries)
+          .build());
+      Integer failedRecordCount = response.failedRecordCount();
+      if (failedRecordCount == null || failedRecordCount == 0) return;
 
-    get().putRecord(PutRecordRequest.builder()
-        .streamName(streamName)
-        .data(SdkBytes.fromByteArray(message))
-        .partitionKey(getPartitionKey())
-        .build());
+      List<PutRecordsRequestEntry> failed = new ArrayList<>(failedRecordCount);
+      PutRecordsResultEntry failure = null;
+      for (int i = 0; i < entries.size(); i++) {
+        PutRecordsResultEntry result = response.records().get(i);
+        if (result.errorCode() == null) continue;
+        failed.add(entries.get(i));
+        if (failure == null) failure = result;
+      }
+      if (failure == null) return;
+      if (retry == MAX_PUT_RECORDS_RETRIES) {
+        throw new IllegalStateException("Failed to put " + failed.size() + " records to "
+            + streamName + ": " + failure.errorCode() + " " + failure.errorMessage());
+      }
+      entries = failed;
+      try {
+        Thread.sleep(RETRY_BACKOFF_MILLIS << retry);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted retrying records", e);
+      }
+    }
   }
 
   @Override public synchronized void close() {
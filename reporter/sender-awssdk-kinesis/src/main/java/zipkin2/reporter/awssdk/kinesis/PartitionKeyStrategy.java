@@ -0,0 +1,28 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.awssdk.kinesis;
+
+/**
+ * How {@link KinesisSender} chooses the shard of each record. Each shard accepts up to 1MB/s of
+ * writes, so a strategy that spreads records lets throughput scale with the shard count.
+ */
+public enum PartitionKeyStrategy {
+  /** Records of this host use its host name as partition key, so they all go to one shard. */
+  HOSTNAME,
+  /** Each record uses a random partition key. */
+  RANDOM,
+  /**
+   * Records take turns across the hash key range of the stream, so evenly split shards each
+   * receive the same share.
+   */
+  ROUND_ROBIN,
+  /**
+   * Spans are grouped into records by trace ID, so that all spans of a trace go to the same shard,
+   * regardless of the host that reported them. Spans are spread over as many hash key ranges as
+   * {@link KinesisSender.Builder#recordsPerSend(int) records per send}, so set that to at least
+   * the shard count.
+   */
+  TRACE_ID
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.awssdk.kinesis;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import zipkin2.reporter.internal.Nullable;
+
+/** Splits the spans of a message into records, keyed by a {@link PartitionKeyStrategy}. */
+final class Partitioner {
+  static final int ROUND_ROBIN_SLOTS = 1024;
+  // Shards own ranges of the 128-bit MD5 hash of partition keys, unless a hash key is explicit.
+  static final BigInteger HASH_KEY_RANGE = BigInteger.ONE.shiftLeft(128);
+  static final byte[] JSON_TRACE_ID_PREFIX =
+      {'{', '"', 't', 'r', 'a', 'c', 'e', 'I', 'd', '"', ':', '"'};
+
+  static final class Record {
+    final List<byte[]> spans = new ArrayList<>();
+    String partitionKey;
+    @Nullable String explicitHashKey;
+  }
+
+  final PartitionKeyStrategy strategy;
+  final int recordsPerSend;
+  final AtomicInteger nextSlot = new AtomicInteger();
+  volatile String hostname;
+
+  Partitioner(PartitionKeyStrategy strategy, int recordsPerSend) {
+    this.strategy = strategy;
+    this.recordsPerSend = recordsPerSend;
+  }
+
+  List<Record> partition(List<byte[]> spans) {
+    if (strategy == PartitionKeyStrategy.TRACE_ID && !spans.isEmpty()) {
+      return partitionByTraceId(spans);
+    }
+    int count = Math.max(1, Math.min(recordsPerSend, spans.size()));
+    List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) records.add(newRecord());
+    for (int i = 0; i < spans.size(); i++) records.get(i % count).spans.add(spans.get(i));
+    return records;
+  }
+
+  /** Buckets are a function of the trace ID only, so every host sends a trace to one shard. */
+  List<Record> partitionByTraceId(List<byte[]> spans) {
+    Record[] buckets = new Record[recordsPerSend];
+    for (byte[] span : spans) {
+      int bucket = (int) Long.remainderUnsigned(traceIdLow64(span), recordsPerSend);
+      if (buckets[bucket] == null) {
+        buckets[bucket] = new Record();
+        buckets[bucket].partitionKey = hostname();
+        buckets[bucket].explicitHashKey = hashKey(bucket, recordsPerSend);
+      }
+      buckets[bucket].spans.add(span);
+    }
+    List<Record> records = new ArrayList<>();
+    for (Record record : buckets) {
+      if (record != null) records.add(record);
+    }
+    return records;
+  }
+
+  Record newRecord() {
+    Record record = new Record();
+    switch (strategy) {
+      case RANDOM:
+        record.partitionKey = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        break;
+      case ROUND_ROBIN:
+        record.partitionKey = hostname();
+        int slot = Math.floorMod(nextSlot.getAndIncrement(), ROUND_ROBIN_SLOTS);
+        record.explicitHashKey = hashKey(slot, ROUND_ROBIN_SLOTS);
+        break;
+      default:
+        record.partitionKey = hostname();
+    }
+    return record;
+  }
+
+  String hostname() {
+    String result = hostname;
+    if (result != null) return result;
+    try {
+      result = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      result = UUID.randomUUID().toString();
+    }
+    return hostname = result;
+  }
+
+  /** Returns the middle of the slot when splitting the hash key range into equal slots. */
+  static String hashKey(int slot, int slots) {
+    BigInteger step = HASH_KEY_RANGE.divide(BigInteger.valueOf(slots));
+    return step.multiply(BigInteger.valueOf(slot)).add(step.shiftRight(1)).toString();
+  }
+
+  /**
+   * Reads the low 64 bits of the trace ID, which zipkin's encoders write first. This is the same
+   * for json and proto3, so hosts using either encoding send a trace to the same shard.
+   */
+  static long traceIdLow64(byte[] span) {
+    if (startsWith(span, JSON_TRACE_ID_PREFIX)) {
+      int start = JSON_TRACE_ID_PREFIX.length, end = start;
+      while (end < span.length && span[end] != '"') end++;
+      long result = 0;
+      for (int i = Math.max(start, end - 16); i < end; i++) {
+        result = (result << 4) | Character.digit((char) span[i], 16);
+      }
+      return result;
+    }
+    if (span.length > 0 && span[0] == 10) { // proto3 ListOfSpans entry
+      int i = 1;
+      while (i < span.length && (span[i] & 0x80) != 0) i++; // the varint length of the span
+      i++;
+      if (i + 1 < span.length && span[i] == 10) { // trace_id
+        int end = i + 2 + span[i + 1];
+        if (span[i + 1] >= 8 && end <= span.length) {
+          long result = 0;
+          for (int j = end - 8; j < end; j++) result = (result << 8) | (span[j] & 0xff);
+          return result;
+        }
+      }
+    }
+    return Arrays.hashCode(span); // such as thrift
+  }
+
+  static boolean startsWith(byte[] span, byte[] prefix) {
+    if (span.length < prefix.length) return false;
+    for (int i = 0; i < prefix.length; i++) {
+      if (span[i] != prefix[i]) return false;
+    }
+    return true;
+  }
+}
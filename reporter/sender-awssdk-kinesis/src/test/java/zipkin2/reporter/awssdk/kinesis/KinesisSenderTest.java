@@ -104,6 +104,104 @@ class KinesisSenderTest {
         .isInstanceOf(Exception.class);
   }
 
+  @Test void send_recordsPerSend() throws Exception {
+    server.enqueue(putRecordsResponse(null, null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.RANDOM)
+        .recordsPerSend(2)
+        .build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN, CLIENT_SPAN);
+
+    JsonNode records = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(records).hasSize(2);
+    assertThat(extractSpans(records.get(0))).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+    assertThat(extractSpans(records.get(1))).containsExactly(CLIENT_SPAN);
+    assertThat(records.get(0).get("PartitionKey").asText())
+        .isNotEqualTo(records.get(1).get("PartitionKey").asText());
+  }
+
+  @Test void send_recordsPerSend_retriesFailedRecords() throws Exception {
+    server.enqueue(putRecordsResponse(null, "ProvisionedThroughputExceededException"));
+    server.enqueue(putRecordsResponse((String) null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.ROUND_ROBIN)
+        .recordsPerSend(2)
+        .build();
+
+    Span other = CLIENT_SPAN.toBuilder().id("2").build();
+    sendSpans(CLIENT_SPAN, other);
+
+    JsonNode first = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(first).hasSize(2);
+    JsonNode retry = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(retry).containsExactly(first.get(1));
+    assertThat(extractSpans(retry.get(0))).containsExactly(other);
+  }
+
+  @Test void send_recordsPerSend_failsAfterRetries() {
+    for (int i = 0; i <= KinesisSender.MAX_PUT_RECORDS_RETRIES; i++) {
+      server.enqueue(putRecordsResponse("ProvisionedThroughputExceededException"));
+    }
+
+    sender.close();
+    sender = sender.toBuilder().recordsPerSend(2).build();
+
+    assertThatThrownBy(() -> sendSpans(CLIENT_SPAN))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageStartingWith(
+            "Failed to put 1 records to test: ProvisionedThroughputExceededException");
+  }
+
+  @Test void send_traceId() throws Exception {
+    server.enqueue(putRecordsResponse(null, null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.TRACE_ID)
+        .recordsPerSend(2)
+        .build();
+
+    Span trace1 = CLIENT_SPAN.toBuilder().traceId("1").build();
+    Span trace2 = CLIENT_SPAN.toBuilder().traceId("2").build();
+    sendSpans(trace1, trace2, trace1);
+
+    JsonNode records = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(records).hasSize(2);
+    assertThat(extractSpans(records.get(0))).containsExactly(trace2);
+    assertThat(extractSpans(records.get(1))).containsExactly(trace1, trace1);
+    assertThat(records.get(0).get("ExplicitHashKey").asText())
+        .isNotEqualTo(records.get(1).get("ExplicitHashKey").asText());
+  }
+
+  @Test void recordsPerSend_outOfRange() {
+    assertThatThrownBy(() -> KinesisSender.newBuilder().recordsPerSend(501))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /** Each argument is the error code of a record, or null if it succeeded. */
+  static MockResponse putRecordsResponse(String... errorCodes) {
+    StringBuilder body = new StringBuilder();
+    int failed = 0;
+    for (String errorCode : errorCodes) {
+      body.append(body.length() == 0 ? "" : ",");
+      if (errorCode == null) {
+        body.append("{\"SequenceNumber\":\"1\",\"ShardId\":\"shardId-000000000000\"}");
+      } else {
+        failed++;
+        body.append("{\"ErrorCode\":\"").append(errorCode)
+            .append("\",\"ErrorMessage\":\"Rate exceeded\"}");
+      }
+    }
+    return new MockResponse()
+        .addHeader("Content-Type", "application/x-amz-json-1.1")
+        .setBody("{\"FailedRecordCount\":" + failed + ",\"Records\":[" + body + "]}");
+  }
+
   static MockResponse kinesisResponse() {
     return new MockResponse()
         .addHeader("Content-Type", "application/x-amz-json-1.1")
@@ -111,7 +209,10 @@ class KinesisSenderTest {
   }
 
   List<Span> extractSpans(Buffer body) throws IOException {
-    JsonNode tree = mapper.readTree(body.inputStream());
+    return extractSpans(mapper.readTree(body.inputStream()));
+  }
+
+  static List<Span> extractSpans(JsonNode tree) {
     // V2 SDK sends JSON with "Data" as base64-encoded bytes
     byte[] encodedSpans = Base64.getDecoder().decode(tree.get("Data").asText());
     if (encodedSpans[0] == '[') {
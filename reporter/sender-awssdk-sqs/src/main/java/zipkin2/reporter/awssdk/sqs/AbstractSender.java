@@ -4,10 +4,12 @@
  */
 package zipkin2.reporter.awssdk.sqs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import zipkin2.reporter.BytesMessageEncoder;
 import zipkin2.reporter.BytesMessageSender;
@@ -15,27 +17,71 @@ import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
 
 abstract class AbstractSender extends BytesMessageSender.Base {
+  static final int SQS_MAX_MESSAGE_BYTES = 256 * 1024;
 
   final String queueUrl;
   final int messageMaxBytes;
+  final boolean compressionEnabled;
+  final ClaimCheck claimCheck; // nullable
   volatile boolean closeCalled = false;
 
-  AbstractSender(Encoding encoding, int messageMaxBytes, String queueUrl) {
+  AbstractSender(Encoding encoding, int messageMaxBytes, String queueUrl,
+      boolean compressionEnabled, ClaimCheck claimCheck) {
     super(encoding);
     this.queueUrl = queueUrl;
     this.messageMaxBytes = messageMaxBytes;
+    this.compressionEnabled = compressionEnabled;
+    this.claimCheck = claimCheck;
   }
 
   @Override public void send(List<byte[]> list) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
 
     byte[] encodedSpans = BytesMessageEncoder.forEncoding(encoding()).encode(list);
+    if (compressionEnabled) {
+      sendCompressed(list, encodedSpans);
+      return;
+    }
     String body =
         encoding() == Encoding.JSON && isAscii(encodedSpans)
             ? new String(encodedSpans, StandardCharsets.UTF_8)
             : Base64.getEncoder().encodeToString(encodedSpans);
 
-    call(SendMessageRequest.builder().messageBody(body).queueUrl(queueUrl).build());
+    sendBody(body);
+  }
+
+  void sendCompressed(List<byte[]> list, byte[] encodedSpans) throws IOException {
+    String body = Base64.getEncoder().encodeToString(gzip(encodedSpans));
+    // messageMaxBytes limits the uncompressed size, so spans that compress poorly can still exceed
+    // what SQS accepts. Split them instead of failing the whole batch, unless they can be offloaded.
+    if (body.length() > SQS_MAX_MESSAGE_BYTES && claimCheck == null && list.size() > 1) {
+      int half = list.size() / 2;
+      send(list.subList(0, half));
+      send(list.subList(half, list.size()));
+      return;
+    }
+    sendBody(body);
+  }
+
+  /** Sends the body, offloading it to S3 when too large for SQS and a claim check is configured. */
+  void sendBody(String body) throws IOException {
+    SendMessageRequest.Builder request = SendMessageRequest.builder().queueUrl(queueUrl);
+    // The body is always ascii, so its length is its size in bytes
+    if (claimCheck != null && body.length() > SQS_MAX_MESSAGE_BYTES) {
+      request.messageBody(claimCheck.offload(body))
+          .messageAttributes(ClaimCheck.attributes(body.length()));
+    } else {
+      request.messageBody(body);
+    }
+    call(request.build());
+  }
+
+  static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 32);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
   }
 
   @Override public int messageMaxBytes() {
@@ -44,6 +90,7 @@ abstract class AbstractSender extends BytesMessageSender.Base {
 
   @Override public int messageSizeInBytes(List<byte[]> list) {
     int listSize = encoding.listSizeInBytes(list);
+    if (compressionEnabled) return listSize; // the compressed size isn't known until sent
     return (listSize + 2) * 4 / 3; // account for base64 encoding
   }
 
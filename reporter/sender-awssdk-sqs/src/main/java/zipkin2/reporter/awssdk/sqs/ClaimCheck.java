@@ -0,0 +1,56 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.awssdk.sqs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Stores message bodies too large for SQS in S3, sending a pointer in their place. The pointer is
+ * the format of the Amazon SQS Extended Client, so other consumers of the queue can resolve it.
+ *
+ * <p>This is the only type that references S3, which is an optional dependency.
+ */
+final class ClaimCheck {
+  static final String POINTER_CLASS = "software.amazon.payloadoffloading.PayloadS3Pointer";
+  static final String PAYLOAD_SIZE_ATTRIBUTE = "ExtendedPayloadSize";
+
+  final S3Client s3Client;
+  final String bucket;
+
+  ClaimCheck(S3Client s3Client, String bucket) {
+    if (s3Client == null) throw new NullPointerException("s3Client == null");
+    if (bucket == null) throw new NullPointerException("bucket == null");
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+  }
+
+  /** Uploads the body and returns the pointer to send instead. */
+  String offload(String body) {
+    String key = UUID.randomUUID().toString();
+    s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(),
+        RequestBody.fromString(body, StandardCharsets.UTF_8));
+    // Bucket names and UUIDs need no JSON escaping
+    return "[\"" + POINTER_CLASS + "\",{\"s3BucketName\":\"" + bucket + "\",\"s3Key\":\""
+        + key + "\"}]";
+  }
+
+  static Map<String, MessageAttributeValue> attributes(int payloadSize) {
+    return Collections.singletonMap(PAYLOAD_SIZE_ATTRIBUTE, MessageAttributeValue.builder()
+        .dataType("Number")
+        .stringValue(Integer.toString(payloadSize))
+        .build());
+  }
+
+  void close() {
+    s3Client.close();
+  }
+}
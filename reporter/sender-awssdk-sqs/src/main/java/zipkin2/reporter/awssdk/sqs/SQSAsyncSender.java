@@ -8,7 +8,12 @@ import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import zipkin2.reporter.Encoding;
 
-/** @deprecated as all senders are synchronous now, this will be removed in v2.0 */
+/**
+ * Sends spans to SQS with an {@link SqsAsyncClient}. Unlike {@link SQSSender}, this doesn't support
+ * offloading messages too large for SQS to S3, so such messages fail to send.
+ *
+ * @deprecated as all senders are synchronous now, this will be removed in v2.0
+ */
 @Deprecated
 public final class SQSAsyncSender extends AbstractSender {
 
@@ -29,6 +34,7 @@ public final class SQSAsyncSender extends AbstractSender {
     private Encoding encoding = Encoding.JSON;
     private String queueUrl;
     private int messageMaxBytes = 256 * 1024; // 256KB SQS limit
+    private boolean compressionEnabled;
 
     public Builder queueUrl(String queueUrl) {
       if (queueUrl == null) throw new NullPointerException("queueUrl == null");
@@ -52,6 +58,17 @@ public final class SQSAsyncSender extends AbstractSender {
       return this;
     }
 
+    /**
+     * When true, messages are gzipped and base64 encoded, which the Zipkin SQS collector detects.
+     * {@link #messageMaxBytes(int)} then limits the size before compression, so raise it, for
+     * example to 1MiB, to fit more spans in each message. A message that is still too large for
+     * SQS after compression is split. Defaults to false.
+     */
+    public Builder compressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
     public SQSAsyncSender build() {
       return new SQSAsyncSender(this);
     }
@@ -61,6 +78,7 @@ public final class SQSAsyncSender extends AbstractSender {
       this.encoding = sender.encoding;
       this.queueUrl = sender.queueUrl;
       this.messageMaxBytes = sender.messageMaxBytes;
+      this.compressionEnabled = sender.compressionEnabled;
     }
 
     Builder() {
@@ -74,7 +92,8 @@ public final class SQSAsyncSender extends AbstractSender {
   private final SqsAsyncClient sqsClient;
 
   private SQSAsyncSender(Builder builder) {
-    super(builder.encoding, builder.messageMaxBytes, builder.queueUrl);
+    super(builder.encoding, builder.messageMaxBytes, builder.queueUrl,
+        builder.compressionEnabled, null); // no claim check: see class docs
     this.sqsClient = builder.sqsClient;
   }
 
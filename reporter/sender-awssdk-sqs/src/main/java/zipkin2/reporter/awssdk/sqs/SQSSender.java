@@ -4,6 +4,7 @@
  */
 package zipkin2.reporter.awssdk.sqs;
 
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import zipkin2.reporter.Encoding;
@@ -27,6 +28,8 @@ public final class SQSSender extends AbstractSender {
     private Encoding encoding = Encoding.JSON;
     private String queueUrl;
     private int messageMaxBytes = 256 * 1024; // 256KB SQS limit
+    private boolean compressionEnabled;
+    private ClaimCheck claimCheck;
 
     public Builder queueUrl(String queueUrl) {
       if (queueUrl == null) throw new NullPointerException("queueUrl == null");
@@ -50,6 +53,30 @@ public final class SQSSender extends AbstractSender {
       return this;
     }
 
+    /**
+     * When true, messages are gzipped and base64 encoded, which the Zipkin SQS collector detects.
+     * {@link #messageMaxBytes(int)} then limits the size before compression, so raise it, for
+     * example to 1MiB, to fit more spans in each message. A message that is still too large for
+     * SQS after compression is split. Defaults to false.
+     */
+    public Builder compressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
+    /**
+     * Stores messages larger than the SQS limit of 256KiB in the given bucket, sending a pointer to
+     * the object instead. The Zipkin SQS collector resolves these pointers, as does the Amazon SQS
+     * Extended Client. Raise {@link #messageMaxBytes(int)} to send larger messages this way.
+     *
+     * <p>Objects aren't deleted after collection, so add a lifecycle rule to the bucket that expires
+     * them. This requires the {@code software.amazon.awssdk:s3} dependency.
+     */
+    public Builder s3ClaimCheck(S3Client s3Client, String bucket) {
+      this.claimCheck = new ClaimCheck(s3Client, bucket);
+      return this;
+    }
+
     public SQSSender build() {
       return new SQSSender(this);
     }
@@ -59,6 +86,8 @@ public final class SQSSender extends AbstractSender {
       this.encoding = sender.encoding;
       this.queueUrl = sender.queueUrl;
       this.messageMaxBytes = sender.messageMaxBytes;
+      this.compressionEnabled = sender.compressionEnabled;
+      this.claimCheck = sender.claimCheck;
     }
 
     Builder() {
@@ -72,13 +101,15 @@ public final class SQSSender extends AbstractSender {
   private final SqsClient sqsClient;
 
   SQSSender(Builder builder) {
-    super(builder.encoding, builder.messageMaxBytes, builder.queueUrl);
+    super(builder.encoding, builder.messageMaxBytes, builder.queueUrl,
+        builder.compressionEnabled, builder.claimCheck);
     this.sqsClient = builder.sqsClient;
   }
 
   @Override public synchronized void close() {
     if (closeCalled) return;
     sqsClient.close();
+    if (claimCheck != null) claimCheck.close();
     closeCalled = true;
   }
 
@@ -15,6 +15,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import zipkin2.Span;
 import zipkin2.junit.aws.AmazonSQSExtension;
@@ -74,6 +75,25 @@ class SQSAsyncSenderTest {
     assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
   }
 
+  @Test @SuppressWarnings("deprecation") void compressionEnabled() {
+    try (SqsAsyncClient sqsAsyncClient = SqsAsyncClient.builder()
+        .region(Region.US_EAST_1)
+        .endpointOverride(URI.create(sqs.queueUrl()))
+        .credentialsProvider(
+            StaticCredentialsProvider.create(
+                AwsBasicCredentials.create("x", "x")))
+        .build()) {
+      SQSAsyncSender asyncSender = SQSAsyncSender.newBuilder()
+          .queueUrl(sqs.queueUrl())
+          .sqsClient(sqsAsyncClient)
+          .compressionEnabled(true)
+          .build();
+
+      assertThat(asyncSender.compressionEnabled).isTrue();
+      assertThat(asyncSender.toBuilder().build().compressionEnabled).isTrue();
+    }
+  }
+
   void sendSpans(Span... spans) throws IOException {
     SpanBytesEncoder bytesEncoder =
         sender.encoding() == Encoding.JSON ? SpanBytesEncoder.JSON_V2 : SpanBytesEncoder.PROTO3;
@@ -6,6 +6,7 @@ package zipkin2.reporter.awssdk.sqs;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,16 +18,20 @@ import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.junit.aws.AmazonS3Extension;
 import zipkin2.junit.aws.AmazonSQSExtension;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.SpanBytesEncoder;
 
+import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static zipkin2.TestObjects.CLIENT_SPAN;
 
 class SQSSenderTest {
   @RegisterExtension AmazonSQSExtension sqs = new AmazonSQSExtension();
+  @RegisterExtension AmazonS3Extension s3 = new AmazonS3Extension();
 
   private SQSSender sender;
 
@@ -69,6 +74,60 @@ class SQSSenderTest {
     assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
   }
 
+  @Test void send_compressed() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_compressed_PROTO3() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).encoding(Encoding.PROTO3).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void messageSizeInBytes_compressed_isUncompressedSize() {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).build();
+    List<byte[]> encoded = asList(SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN));
+
+    assertThat(sender.messageSizeInBytes(encoded))
+        .isEqualTo(Encoding.JSON.listSizeInBytes(encoded));
+  }
+
+  @Test void send_claimCheck() throws Exception {
+    sender.close();
+    sender = sender.toBuilder()
+        .messageMaxBytes(2 * 1024 * 1024)
+        .s3ClaimCheck(s3.client(), "zipkin")
+        .build();
+    Span[] spans = new Span[1000];
+    Arrays.fill(spans, CLIENT_SPAN);
+
+    sendSpans(spans);
+
+    assertThat(sqs.queueCount()).isEqualTo(1);
+    assertThat(s3.objectCount()).isEqualTo(1);
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(s3.objects().iterator().next()))
+        .hasSize(1000);
+  }
+
+  @Test void send_claimCheck_smallMessageIsntOffloaded() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().s3ClaimCheck(s3.client(), "zipkin").build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+    assertThat(s3.objectCount()).isZero();
+  }
+
   void sendSpans(Span... spans) throws IOException {
     SpanBytesEncoder bytesEncoder =
         sender.encoding() == Encoding.JSON ? SpanBytesEncoder.JSON_V2 : SpanBytesEncoder.PROTO3;
@@ -9,12 +9,13 @@ import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.AmazonKinesisClientBuilder;
 import com.amazonaws.services.kinesis.model.PutRecordRequest;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
 import zipkin2.reporter.BytesMessageEncoder;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.ClosedSenderException;
@@ -22,6 +23,9 @@ import zipkin2.reporter.Encoding;
 import zipkin2.reporter.internal.Nullable;
 
 public final class KinesisSender extends BytesMessageSender.Base {
+  // PutRecords attempts after the first, retrying only records that failed
+  static final int MAX_PUT_RECORDS_RETRIES = 3;
+  static final long RETRY_BACKOFF_MILLIS = 100;
 
   public static KinesisSender create(String streamName) {
     return newBuilder().streamName(streamName).build();
@@ -37,6 +41,8 @@ public final class KinesisSender extends BytesMessageSender.Base {
     EndpointConfiguration endpointConfiguration;
     int messageMaxBytes = 1024 * 1024; // 1MB Kinesis limit.
     Encoding encoding = Encoding.JSON;
+    PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.HOSTNAME;
+    int recordsPerSend = 1;
 
     Builder(KinesisSender sender) {
       this.streamName = sender.streamName;
@@ -45,6 +51,8 @@ public final class KinesisSender extends BytesMessageSender.Base {
       this.endpointConfiguration = sender.endpointConfiguration;
       this.messageMaxBytes = sender.messageMaxBytes;
       this.encoding = sender.encoding;
+      this.partitionKeyStrategy = sender.partitioner.strategy;
+      this.recordsPerSend = sender.partitioner.recordsPerSend;
     }
 
     /** Kinesis stream to send spans. */
@@ -95,6 +103,32 @@ public final class KinesisSender extends BytesMessageSender.Base {
       return this;
     }
 
+    /**
+     * How each record chooses its shard. Defaults to {@link PartitionKeyStrategy#HOSTNAME}, which
+     * limits this host to the 1MB/s write throughput of one shard.
+     */
+    public Builder partitionKeyStrategy(PartitionKeyStrategy partitionKeyStrategy) {
+      if (partitionKeyStrategy == null) {
+        throw new NullPointerException("partitionKeyStrategy == null");
+      }
+      this.partitionKeyStrategy = partitionKeyStrategy;
+      return this;
+    }
+
+    /**
+     * Splits the spans of each message into up to this many records, sent together with
+     * PutRecords, which only retries the records that failed. With a {@link
+     * #partitionKeyStrategy(PartitionKeyStrategy) strategy} other than the host name, the records
+     * of a message go to different shards. Defaults to 1, which sends each message with PutRecord.
+     */
+    public Builder recordsPerSend(int recordsPerSend) {
+      if (recordsPerSend < 1 || recordsPerSend > 500) {
+        throw new IllegalArgumentException("recordsPerSend must be between 1 and 500");
+      }
+      this.recordsPerSend = recordsPerSend;
+      return this;
+    }
+
     public KinesisSender build() {
       if (streamName == null) throw new NullPointerException("streamName == null");
       return new KinesisSender(this);
@@ -113,6 +147,7 @@ public final class KinesisSender extends BytesMessageSender.Base {
   @Nullable final AWSCredentialsProvider credentialsProvider;
   @Nullable final EndpointConfiguration endpointConfiguration;
   final int messageMaxBytes;
+  final Partitioner partitioner;
 
   KinesisSender(Builder builder) {
     super(builder.encoding);
@@ -121,20 +156,7 @@ public final class KinesisSender extends BytesMessageSender.Base {
     this.credentialsProvider = builder.credentialsProvider;
     this.endpointConfiguration = builder.endpointConfiguration;
     this.messageMaxBytes = builder.messageMaxBytes;
-  }
-
-  private final AtomicReference<String> partitionKey = new AtomicReference<>("");
-
-  private String getPartitionKey() {
-    if (partitionKey.get().isEmpty()) {
-      try {
-        partitionKey.set(InetAddress.getLocalHost().getHostName());
-      } catch (UnknownHostException e) {
-        // Shouldn't be possible, but you know
-        partitionKey.set(UUID.randomUUID().toString());
-      }
-    }
-    return partitionKey.get();
+    this.partitioner = new Partitioner(builder.partitionKeyStrategy, builder.recordsPerSend);
   }
 
   /** get and close are typically called from different threads */
@@ -162,14 +184,62 @@ public final class KinesisSender extends BytesMessageSender.Base {
   @Override public void send(List<byte[]> list) {
     if (closeCalled) throw new ClosedSenderException();
 
-    ByteBuffer message = ByteBuffer.wrap(BytesMessageEncoder.forEncoding(encoding()).encode(list));
+    BytesMessageEncoder encoder = BytesMessageEncoder.forEncoding(encoding());
+    List<Partitioner.Record> records = partitioner.partition(list);
+    if (partitioner.recordsPerSend == 1) {
+      Partitioner.Record record = records.get(0);
+      PutRecordRequest request = new PutRecordRequest();
+      request.setStreamName(streamName);
+      request.setData(ByteBuffer.wrap(encoder.encode(record.spans)));
+      request.setPartitionKey(record.partitionKey);
+      request.setExplicitHashKey(record.explicitHashKey);
+
+      get().putRecord(request);
+      return;
+    }
 
-    PutRecordRequest request = new PutRecordRequest();
-    request.setStreamName(streamName);
-    request.setData(message);
-    request.setPartitionKey(getPartitionKey());
+    List<PutRecordsRequestEntry> entries = new ArrayList<>(records.size());
+    for (Partitioner.Record record : records) {
+      PutRecordsRequestEntry entry = new PutRecordsRequestEntry();
+      entry.setData(ByteBuffer.wrap(encoder.encode(record.spans)));
+      entry.setPartitionKey(record.partitionKey);
+      entry.setExplicitHashKey(record.explicitHashKey);
+      entries.add(entry);
+    }
+    putRecords(entries);
+  }
 
-    get().putRecord(request);
+  /** Retries records that fail, such as when their shard is over its write limit. */
+  void putRecords(List<PutRecordsRequestEntry> entries) {
+    for (int retry = 0; ; retry++) {
+      PutRecordsRequest request = new PutRecordsRequest();
+      request.setStreamName(streamName);
+      request.setRecords(entries);
+      PutRecordsResult result = get().putRecords(request);
+      Integer failedRecordCount = result.getFailedRecordCount();
+      if (failedRecordCount == null || failedRecordCount == 0) return;
+
+      List<PutRecordsRequestEntry> failed = new ArrayList<>(failedRecordCount);
+      PutRecordsResultEntry failure = null;
+      for (int i = 0; i < entries.size(); i++) {
+        PutRecordsResultEntry entry = result.getRecords().get(i);
+        if (entry.getErrorCode() == null) continue;
+        failed.add(entries.get(i));
+        if (failure == null) failure = entry;
+      }
+      if (failure == null) return;
+      if (retry == MAX_PUT_RECORDS_RETRIES) {
+        throw new IllegalStateException("Failed to put " + failed.size() + " records to "
+            + streamName + ": " + failure.getErrorCode() + " " + failure.getErrorMessage());
+      }
+      entries = failed;
+      try {
+        Thread.sleep(RETRY_BACKOFF_MILLIS << retry);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted retrying records", e);
+      }
+    }
   }
 
   @Override public synchronized void close() {
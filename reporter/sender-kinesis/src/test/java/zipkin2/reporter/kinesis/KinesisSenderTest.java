@@ -8,7 +8,11 @@ import com.amazonaws.SdkClientException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.AnonymousAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import java.io.IOException;
 import java.util.List;
@@ -69,6 +73,7 @@ class KinesisSenderTest {
   @Test void send_PROTO3() throws Exception {
     server.enqueue(new MockResponse());
 
+    sender.close();
     sender.close();
     sender = sender.toBuilder().encoding(Encoding.PROTO3).build();
 
@@ -98,8 +103,112 @@ class KinesisSenderTest {
         .isInstanceOf(SdkClientException.class);
   }
 
+  @Test void send_recordsPerSend() throws Exception {
+    server.enqueue(putRecordsResponse(null, null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.RANDOM)
+        .recordsPerSend(2)
+        .build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN, CLIENT_SPAN);
+
+    JsonNode records = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(records).hasSize(2);
+    assertThat(extractSpans(records.get(0))).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+    assertThat(extractSpans(records.get(1))).containsExactly(CLIENT_SPAN);
+    assertThat(records.get(0).get("PartitionKey").asText())
+        .isNotEqualTo(records.get(1).get("PartitionKey").asText());
+  }
+
+  @Test void send_recordsPerSend_retriesFailedRecords() throws Exception {
+    server.enqueue(putRecordsResponse(null, "ProvisionedThroughputExceededException"));
+    server.enqueue(putRecordsResponse((String) null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.ROUND_ROBIN)
+        .recordsPerSend(2)
+        .build();
+
+    Span other = CLIENT_SPAN.toBuilder().id("2").build();
+    sendSpans(CLIENT_SPAN, other);
+
+    JsonNode first = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(first).hasSize(2);
+    JsonNode retry = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(retry).containsExactly(first.get(1));
+    assertThat(extractSpans(retry.get(0))).containsExactly(other);
+  }
+
+  @Test void send_recordsPerSend_failsAfterRetries() throws Exception {
+    for (int i = 0; i <= KinesisSender.MAX_PUT_RECORDS_RETRIES; i++) {
+      server.enqueue(putRecordsResponse("ProvisionedThroughputExceededException"));
+    }
+
+    sender.close();
+    sender.close();
+    sender = sender.toBuilder().recordsPerSend(2).build();
+
+    assertThatThrownBy(() -> sendSpans(CLIENT_SPAN))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageStartingWith(
+            "Failed to put 1 records to test: ProvisionedThroughputExceededException");
+  }
+
+  @Test void send_traceId() throws Exception {
+    server.enqueue(putRecordsResponse(null, null));
+
+    sender.close();
+    sender = sender.toBuilder()
+        .partitionKeyStrategy(PartitionKeyStrategy.TRACE_ID)
+        .recordsPerSend(2)
+        .build();
+
+    Span trace1 = CLIENT_SPAN.toBuilder().traceId("1").build();
+    Span trace2 = CLIENT_SPAN.toBuilder().traceId("2").build();
+    sendSpans(trace1, trace2, trace1);
+
+    JsonNode records = mapper.readTree(server.takeRequest().getBody().inputStream()).get("Records");
+    assertThat(records).hasSize(2);
+    assertThat(extractSpans(records.get(0))).containsExactly(trace2);
+    assertThat(extractSpans(records.get(1))).containsExactly(trace1, trace1);
+    assertThat(records.get(0).get("ExplicitHashKey").asText())
+        .isNotEqualTo(records.get(1).get("ExplicitHashKey").asText());
+  }
+
+  @Test void recordsPerSend_outOfRange() {
+    assertThatThrownBy(() -> KinesisSender.newBuilder().recordsPerSend(0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /** Each argument is the error code of a record, or null if it succeeded. */
+  MockResponse putRecordsResponse(String... errorCodes) throws JsonProcessingException {
+    ObjectNode result = mapper.createObjectNode();
+    ArrayNode records = result.putArray("Records");
+    int failed = 0;
+    for (String errorCode : errorCodes) {
+      ObjectNode record = records.addObject();
+      if (errorCode == null) {
+        record.put("SequenceNumber", "1").put("ShardId", "shardId-000000000000");
+      } else {
+        failed++;
+        record.put("ErrorCode", errorCode).put("ErrorMessage", "Rate exceeded");
+      }
+    }
+    result.put("FailedRecordCount", failed);
+    return new MockResponse()
+        .addHeader("Content-Type", "application/x-amz-cbor-1.1")
+        .setBody(new Buffer().write(mapper.writeValueAsBytes(result)));
+  }
+
   List<Span> extractSpans(Buffer body) throws IOException {
-    byte[] encodedSpans = mapper.readTree(body.inputStream()).get("Data").binaryValue();
+    return extractSpans(mapper.readTree(body.inputStream()));
+  }
+
+  static List<Span> extractSpans(JsonNode tree) throws IOException {
+    byte[] encodedSpans = tree.get("Data").binaryValue();
     if (encodedSpans[0] == '[') {
       return SpanBytesDecoder.JSON_V2.decodeList(encodedSpans);
     }
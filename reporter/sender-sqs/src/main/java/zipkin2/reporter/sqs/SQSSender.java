@@ -10,8 +10,12 @@ import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.util.Base64;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageEncoder;
 import zipkin2.reporter.BytesMessageSender;
@@ -30,6 +34,7 @@ import zipkin2.reporter.internal.Nullable;
  */
 public final class SQSSender extends BytesMessageSender.Base {
   private static final Charset UTF_8 = Charset.forName("UTF-8");
+  static final int SQS_MAX_MESSAGE_BYTES = 256 * 1024;
 
   public static SQSSender create(String url) {
     return newBuilder().queueUrl(url).build();
@@ -45,6 +50,7 @@ public final class SQSSender extends BytesMessageSender.Base {
     AWSCredentialsProvider credentialsProvider;
     int messageMaxBytes = 256 * 1024; // 256KB SQS limit
     Encoding encoding = Encoding.JSON;
+    boolean compressionEnabled;
 
     Builder(SQSSender sender) {
       this.queueUrl = sender.queueUrl;
@@ -52,6 +58,7 @@ public final class SQSSender extends BytesMessageSender.Base {
       this.endpointConfiguration = sender.endpointConfiguration;
       this.messageMaxBytes = sender.messageMaxBytes;
       this.encoding = sender.encoding;
+      this.compressionEnabled = sender.compressionEnabled;
     }
 
     /** SQS queue URL to send spans. */
@@ -96,6 +103,17 @@ public final class SQSSender extends BytesMessageSender.Base {
       return this;
     }
 
+    /**
+     * When true, messages are gzipped and base64 encoded, which the Zipkin SQS collector detects.
+     * {@link #messageMaxBytes(int)} then limits the size before compression, so raise it, for
+     * example to 1MiB, to fit more spans in each message. A message that is still too large for
+     * SQS after compression is split. Defaults to false.
+     */
+    public Builder compressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
     public SQSSender build() {
       if (queueUrl == null) throw new NullPointerException("queueUrl == null");
       return new SQSSender(this);
@@ -113,6 +131,7 @@ public final class SQSSender extends BytesMessageSender.Base {
   @Nullable final AWSCredentialsProvider credentialsProvider;
   @Nullable final EndpointConfiguration endpointConfiguration;
   final int messageMaxBytes;
+  final boolean compressionEnabled;
 
   SQSSender(Builder builder) {
     super(builder.encoding);
@@ -120,6 +139,7 @@ public final class SQSSender extends BytesMessageSender.Base {
     this.credentialsProvider = builder.credentialsProvider;
     this.endpointConfiguration = builder.endpointConfiguration;
     this.messageMaxBytes = builder.messageMaxBytes;
+    this.compressionEnabled = builder.compressionEnabled;
   }
 
   /** get and close are typically called from different threads */
@@ -146,6 +166,7 @@ public final class SQSSender extends BytesMessageSender.Base {
 
   @Override public int messageSizeInBytes(List<byte[]> encodedSpans) {
     int listSize = encoding().listSizeInBytes(encodedSpans);
+    if (compressionEnabled) return listSize; // the compressed size isn't known until sent
     return (listSize + 2) * 4 / 3; // account for base64 encoding
   }
 
@@ -153,6 +174,10 @@ public final class SQSSender extends BytesMessageSender.Base {
     if (closeCalled) throw new ClosedSenderException();
 
     byte[] encodedSpans = BytesMessageEncoder.forEncoding(encoding()).encode(list);
+    if (compressionEnabled) {
+      sendCompressed(list, encodedSpans);
+      return;
+    }
     String body =
         encoding() == Encoding.JSON && isAscii(encodedSpans) ? new String(encodedSpans, UTF_8)
             : Base64.encodeAsString(encodedSpans);
@@ -160,6 +185,29 @@ public final class SQSSender extends BytesMessageSender.Base {
     get().sendMessage(new SendMessageRequest(queueUrl, body));
   }
 
+  void sendCompressed(List<byte[]> list, byte[] encodedSpans) {
+    String body = Base64.encodeAsString(gzip(encodedSpans));
+    // messageMaxBytes limits the uncompressed size, so spans that compress poorly can still exceed
+    // what SQS accepts. Split them instead of failing the whole batch.
+    if (body.length() > SQS_MAX_MESSAGE_BYTES && list.size() > 1) {
+      int half = list.size() / 2;
+      send(list.subList(0, half));
+      send(list.subList(half, list.size()));
+      return;
+    }
+    get().sendMessage(new SendMessageRequest(queueUrl, body));
+  }
+
+  static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 32);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // unexpected writing to memory
+    }
+    return out.toByteArray();
+  }
+
   @Override public synchronized void close() {
     if (closeCalled) return;
     AmazonSQS client = this.client;
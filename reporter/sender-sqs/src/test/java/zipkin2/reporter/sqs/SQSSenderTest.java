@@ -17,6 +17,7 @@ import zipkin2.junit.aws.AmazonSQSExtension;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.SpanBytesEncoder;
 
+import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static zipkin2.TestObjects.CLIENT_SPAN;
@@ -64,6 +65,33 @@ class SQSSenderTest {
     assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
   }
 
+  @Test void send_compressed() {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_compressed_PROTO3() {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).encoding(Encoding.PROTO3).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(readSpans()).containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void messageSizeInBytes_compressed_isUncompressedSize() {
+    sender.close();
+    sender = sender.toBuilder().compressionEnabled(true).build();
+    List<byte[]> encoded = asList(SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN));
+
+    assertThat(sender.messageSizeInBytes(encoded))
+        .isEqualTo(Encoding.JSON.listSizeInBytes(encoded));
+  }
+
   void sendSpans(Span... spans) {
     SpanBytesEncoder bytesEncoder =
         sender.encoding() == Encoding.JSON ? SpanBytesEncoder.JSON_V2 : SpanBytesEncoder.PROTO3;